@@ -0,0 +1,75 @@
+package bench;
+
+import models.Booking;
+import services.BookingResult;
+import services.BookingService;
+import services.repository.InMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingServiceBenchmark {
+
+    /**
+     * A booking service holding the dataset's bookings, rebuilt before every
+     * iteration so the bookings created by the previous one do not pile up.
+     * Each call books the next available vehicle in turn, one day later on
+     * every round of the fleet, so no call is rejected.
+     */
+    @State(Scope.Benchmark)
+    public static class Bookings {
+        BookingService bookingService;
+        long created;
+
+        @Setup(Level.Iteration)
+        public void reset(Dataset data) {
+            InMemoryRepository<Booking> stored = new InMemoryRepository<>(Booking::getBookingId, Booking::getBookingNumber);
+            stored.saveAll(Arrays.asList(data.bookings));
+            bookingService = new BookingService(data.vehicleService, data.customerService, stored);
+            created = 0;
+        }
+    }
+
+    @Benchmark
+    public Booking createBooking(Dataset data, Bookings state) throws Exception {
+        long n = state.created++;
+        int vehicle = data.bookable[(int) (n % data.bookable.length)];
+        LocalDate startDate = data.firstFreeDate.plusDays(n / data.bookable.length);
+        return state.bookingService.createBooking(data.customers[vehicle], data.carIds[vehicle],
+                startDate, startDate.plusDays(1), 250);
+    }
+
+    /**
+     * Asks for a vehicle over the dates of its dataset booking, so every call is
+     * rejected as already reserved; compare with createBooking for the cost of a rejection
+     */
+    @Benchmark
+    public BookingResult tryCreateRejectedBooking(Dataset data, Picker picker) {
+        int vehicle = data.bookable[picker.next(data.bookable.length)];
+        Booking existing = data.bookings[vehicle];
+        return data.bookingService.tryCreateBooking(data.customers[vehicle], data.carIds[vehicle],
+                existing.getStartDate(), existing.getEndDate(), 250);
+    }
+
+    @Benchmark
+    public List<Booking> findBookingsByCustomerName(Dataset data, Picker picker) {
+        return data.bookingService.findBookingsByCustomerName(data.customerNames[picker.next(data.size)]);
+    }
+}
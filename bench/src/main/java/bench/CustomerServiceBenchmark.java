@@ -0,0 +1,25 @@
+package bench;
+
+import models.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+    @Benchmark
+    public Optional<Customer> findCustomerByNicOrPassport(Dataset data, Picker picker) {
+        return data.customerService.findCustomerByNicOrPassport(data.nicOrPassports[picker.next(data.size)]);
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import enums.AvailabilityStatus;
+import enums.VehicleCategory;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import java.time.LocalDate;
+
+/**
+ * A populated system shared by the benchmarks: size vehicles, size customers,
+ * one booking per customer (customer i rents vehicle i) and one invoice per
+ * booking. Every fourth vehicle is under maintenance, so availability queries
+ * filter a realistic share of the fleet. Customer names repeat every
+ * NAME_COMBINATIONS customers, so a name search matches about
+ * size / NAME_COMBINATIONS customers.
+ */
+@State(Scope.Benchmark)
+public class Dataset {
+    static final String[] FIRST_NAMES = {
+        "Nimal", "Kamal", "Sunil", "Anura", "Saman", "Ruwan", "Chaminda", "Lasith", "Dilan", "Kasun",
+        "Amali", "Nadeesha", "Tharushi", "Sanduni", "Dilani", "Ishara", "Madhavi", "Hasini", "Piumi", "Kavindi"
+    };
+    static final String[] LAST_NAMES = {
+        "Perera", "Fernando", "Silva", "Jayasinghe", "Bandara", "Wickramasinghe", "Gunawardena", "Rathnayake",
+        "Herath", "Dissanayake", "Karunaratne", "Senanayake", "Amarasinghe", "Weerasinghe", "Ranasinghe",
+        "Kumara", "Mendis", "Rajapaksa", "Samarasinghe", "Gamage"
+    };
+    static final int NAME_COMBINATIONS = FIRST_NAMES.length * LAST_NAMES.length;
+    private static final VehicleCategory[] CATEGORIES = VehicleCategory.values();
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+
+    VehicleService vehicleService;
+    CustomerService customerService;
+    BookingService bookingService;
+    InvoiceService invoiceService;
+
+    String[] carIds;
+    String[] nicOrPassports;
+    String[] customerNames;
+    Customer[] customers;
+    Booking[] bookings;
+    Invoice[] invoices;
+    // Indexes of the vehicles that are not under maintenance
+    int[] bookable;
+    // First day every benchmark booking may start on, after the dataset's own bookings
+    LocalDate firstFreeDate;
+
+    @Setup(Level.Trial)
+    public void populate() throws Exception {
+        vehicleService = new VehicleService(false);
+        customerService = new CustomerService();
+        bookingService = new BookingService(vehicleService, customerService);
+        invoiceService = new InvoiceService(bookingService, customerService);
+
+        carIds = new String[size];
+        nicOrPassports = new String[size];
+        customerNames = new String[size];
+        customers = new Customer[size];
+        bookings = new Booking[size];
+        invoices = new Invoice[size];
+
+        LocalDate startDate = LocalDate.now().plusDays(10);
+        for (int i = 0; i < size; i++) {
+            carIds[i] = String.format("BV%07d", i);
+            vehicleService.addVehicle(new Vehicle(carIds[i], "Bench Model " + (i % 100), CATEGORIES[i % CATEGORIES.length]));
+
+            nicOrPassports[i] = String.format("%09dV", i);
+            customerNames[i] = nameOf(i);
+            customers[i] = customerService.registerCustomer(nicOrPassports[i], customerNames[i],
+                    "0771234567", "customer" + i + "@email.com");
+
+            // 1 to 14 days, so some bookings earn the long rental discount, and up to 1,000 km
+            bookings[i] = bookingService.createBooking(customers[i], carIds[i], startDate,
+                    startDate.plusDays(1 + i % 14), 100 + (i % 10) * 100);
+            invoices[i] = invoiceService.generateInvoice(bookings[i]);
+        }
+        bookable = new int[size - size / 4];
+        for (int i = 0, b = 0; i < size; i++) {
+            if (i % 4 == 3) {
+                vehicleService.updateAvailabilityStatus(carIds[i], AvailabilityStatus.UNDER_MAINTENANCE);
+            } else {
+                bookable[b++] = i;
+            }
+        }
+        firstFreeDate = startDate.plusDays(15);
+    }
+
+    static String nameOf(int i) {
+        return FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+    }
+}
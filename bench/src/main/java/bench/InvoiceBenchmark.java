@@ -0,0 +1,36 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvoiceBenchmark {
+
+    /**
+     * Renders the document every time
+     */
+    @Benchmark
+    public String getFormattedInvoice(Dataset data, Picker picker) {
+        return data.invoices[picker.next(data.size)].getFormattedInvoice();
+    }
+
+    /**
+     * Goes through the service's rendered invoice cache, which holds the most
+     * recently used documents up to its byte budget
+     */
+    @Benchmark
+    public Optional<String> getRenderedInvoice(Dataset data, Picker picker) {
+        return data.invoiceService.getRenderedInvoice(data.invoices[picker.next(data.size)].getInvoiceId());
+    }
+}
@@ -0,0 +1,21 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread walk over dataset indexes in a scattered order, so lookups do not
+ * keep hitting the same cache lines the way a single repeated key would
+ */
+@State(Scope.Thread)
+public class Picker {
+    // Golden-ratio step, which spreads consecutive picks across the range
+    private static final int STRIDE = 0x9E3779B9;
+
+    private int position;
+
+    int next(int size) {
+        position += STRIDE;
+        return (position & Integer.MAX_VALUE) % size;
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import models.Booking;
+import models.Invoice;
+import pricing.PriceQuote;
+import pricing.PricingEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pricing of the dataset's bookings. Invoice pricing is private to Invoice, so
+ * it is measured through the engine it delegates to, and through creating an
+ * invoice, which prices it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark {
+
+    @State(Scope.Thread)
+    public static class Quote {
+        final PriceQuote reused = new PriceQuote();
+    }
+
+    @Benchmark
+    public PriceQuote quote(Dataset data, Picker picker, Quote quote) {
+        Booking booking = data.bookings[picker.next(data.size)];
+        return PricingEngine.quote(booking.getVehicle().getCategory(), booking.getRentalDays(),
+                booking.getTotalKilometers(), PricingEngine.toCents(booking.getDepositAmount()), quote.reused);
+    }
+
+    @Benchmark
+    public Invoice newInvoice(Dataset data, Picker picker) {
+        int i = picker.next(data.size);
+        return new Invoice(data.invoices[i].getInvoiceNumber(), data.bookings[i]);
+    }
+}
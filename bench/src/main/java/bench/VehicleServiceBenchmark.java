@@ -0,0 +1,31 @@
+package bench;
+
+import models.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VehicleServiceBenchmark {
+
+    @Benchmark
+    public Optional<Vehicle> findVehicleById(Dataset data, Picker picker) {
+        return data.vehicleService.findVehicleById(data.carIds[picker.next(data.size)]);
+    }
+
+    @Benchmark
+    public List<Vehicle> getAvailableVehicles(Dataset data) {
+        return data.vehicleService.getAvailableVehicles();
+    }
+}
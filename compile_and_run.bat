@@ -10,7 +10,7 @@ echo  Compiling Java files...
 echo.
 
 REM Compile all Java files with proper classpath
-javac -cp src src\EcoRideCarRentalSystem.java src\models\*.java src\services\*.java src\enums\*.java src\tests\*.java
+javac -cp src src\EcoRideCarRentalSystem.java src\api\*.java src\models\*.java src\services\*.java src\services\repository\*.java src\enums\*.java src\pricing\*.java src\persistence\*.java src\utils\*.java src\metrics\*.java src\loadtest\*.java src\tests\*.java
 
 REM Check if compilation was successful
 if %errorlevel% equ 0 (
@@ -1,32 +1,149 @@
+import api.ApiServer;
+import metrics.MetricsRegistry;
 import models.*;
 import services.*;
 import enums.*;
+import persistence.Checkpointer;
+import persistence.Journal;
+import persistence.Snapshot;
+import services.repository.ConnectionPool;
+import services.repository.EntityMappings;
+import services.repository.JdbcRepository;
+import services.repository.Page;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.function.Consumer;
+import javax.management.JMException;
 
 
 public class EcoRideCarRentalSystem {
+    // Listings are shown a page at a time, so long ones are never read in full
+    private static final int DISPLAY_PAGE_SIZE = 20;
+
     private VehicleService vehicleService;
     private CustomerService customerService;
     private BookingService bookingService;
     private InvoiceService invoiceService;
+    // Null when running without persistence
+    private Journal journal;
+    private Checkpointer checkpointer;
+    // Null unless state was loaded from a snapshot
+    private Snapshot snapshot;
+    // Null unless state is kept in an embedded database
+    private ConnectionPool connectionPool;
+    // Null until the menu or the API is started
+    private MetricsRegistry metrics;
     private Scanner scanner;
     private DateTimeFormatter dateFormatter;
 
     public EcoRideCarRentalSystem() {
-        this.vehicleService = new VehicleService();
+        this(new VehicleService());
+    }
+
+    private EcoRideCarRentalSystem(VehicleService vehicleService) {
+        this.vehicleService = vehicleService;
         this.customerService = new CustomerService();
-        this.bookingService = new BookingService(vehicleService);
-        this.invoiceService = new InvoiceService();
+        this.bookingService = new BookingService(vehicleService, customerService);
+        this.invoiceService = new InvoiceService(bookingService, customerService);
+        this.scanner = new Scanner(System.in);
+        this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    }
+
+    /**
+     * Keeps all state in an embedded database (e.g. an H2 or SQLite file) reached
+     * through the pool, instead of the journal and snapshots
+     */
+    public EcoRideCarRentalSystem(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        this.vehicleService = new VehicleService(
+                new JdbcRepository<>(connectionPool, EntityMappings.vehicles()), true);
+        this.customerService = new CustomerService(
+                new JdbcRepository<>(connectionPool, EntityMappings.customers()));
+        this.bookingService = new BookingService(vehicleService, customerService,
+                new JdbcRepository<>(connectionPool, EntityMappings.bookings(
+                        customerService::findCustomerByNicOrPassport, vehicleService::findVehicleById)));
+        this.invoiceService = new InvoiceService(bookingService, customerService,
+                new JdbcRepository<>(connectionPool, EntityMappings.invoices(bookingService::findIndexedBooking)));
         this.scanner = new Scanner(System.in);
         this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        System.out.println("Loaded " + customerService.getAllCustomers().size() + " customers and " +
+                bookingService.getAllBookings().size() + " bookings from " + connectionPool.getUrl());
+    }
+
+    /**
+     * Restores the state saved in the data directory (the snapshot, then the journal
+     * of changes made since) and journals every change
+     */
+    public EcoRideCarRentalSystem(Path dataDirectory) throws IOException {
+        this(dataDirectory, Checkpointer.DEFAULT_MAX_JOURNAL_BYTES, Checkpointer.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * As above, checkpointing in the background once the journal reaches the given
+     * size or the given interval has passed
+     */
+    public EcoRideCarRentalSystem(Path dataDirectory, long checkpointJournalBytes,
+                                  Duration checkpointInterval) throws IOException {
+        this(new VehicleService(!Snapshot.exists(dataDirectory)));
+        if (Snapshot.exists(dataDirectory)) {
+            long started = System.nanoTime();
+            this.snapshot = Snapshot.load(dataDirectory, vehicleService, customerService, bookingService, invoiceService);
+            System.out.printf("Loaded snapshot of %d vehicles, %d customers and %d bookings in %d ms%n",
+                    snapshot.getVehicleCount(), snapshot.getCustomerCount(), snapshot.getBookingCount(),
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+        this.journal = Journal.open(dataDirectory, vehicleService, customerService,
+                bookingService, invoiceService, snapshot);
+        System.out.println("Restored " + journal.getReplayedRecords() + " journal records from " +
+                journal.getDirectory());
+        this.checkpointer = new Checkpointer(journal, vehicleService, customerService, bookingService,
+                invoiceService, snapshot, checkpointJournalBytes, checkpointInterval);
+        checkpointer.start();
+    }
+
+    // Booking and invoice screens need past bookings and invoices, which a snapshot loads in the background
+    private void awaitHistory() throws IOException {
+        if (snapshot != null && !snapshot.isHistoryLoaded()) {
+            System.out.println("\n Loading booking history...");
+            snapshot.awaitHistory();
+        }
+    }
+
+    /**
+     * Saves the full state as a final checkpoint, leaving an empty journal
+     */
+    private void shutDownPersistence() throws IOException {
+        checkpointer.close();
+        checkpointer.checkpoint();
+        journal.close();
+    }
+
+    /**
+     * Collects the services' metrics and exposes them over JMX, under the "ecoride" domain
+     */
+    private void exposeMetrics() {
+        metrics = new MetricsRegistry();
+        vehicleService.registerMetrics(metrics);
+        customerService.registerMetrics(metrics);
+        bookingService.registerMetrics(metrics);
+        invoiceService.registerMetrics(metrics);
+        try {
+            metrics.registerMBeans();
+        } catch (JMException e) {
+            System.out.println("\n Metrics are not available over JMX: " + e.getMessage());
+        }
     }
 
     public void start() {
+        exposeMetrics();
         displayWelcomeBanner();
         boolean running = true;
 
@@ -43,9 +160,11 @@ public class EcoRideCarRentalSystem {
                         customerManagementMenu();
                         break;
                     case 3:
+                        awaitHistory();
                         bookingManagementMenu();
                         break;
                     case 4:
+                        awaitHistory();
                         invoiceManagementMenu();
                         break;
                     case 5:
@@ -55,6 +174,7 @@ public class EcoRideCarRentalSystem {
                         displayAvailableVehicles();
                         break;
                     case 7:
+                        awaitHistory();
                         displayAllBookings();
                         break;
                     case 0:
@@ -75,6 +195,42 @@ public class EcoRideCarRentalSystem {
         }
 
         scanner.close();
+        shutDown();
+    }
+
+    /**
+     * Serves the HTTP API instead of the menu. The server keeps running until the
+     * process is stopped, when state is saved as on exiting the menu.
+     */
+    public void serve(int port) throws IOException {
+        // Every API request may touch booking history, so it is fully loaded first
+        awaitHistory();
+        exposeMetrics();
+        ApiServer server = new ApiServer(port, vehicleService, customerService, bookingService, invoiceService,
+                metrics);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            shutDown();
+        }, "api-shutdown"));
+        server.start();
+        System.out.println("Serving the EcoRide API on port " + server.getPort() +
+                (server.isUsingVirtualThreads() ? " (virtual threads)" : "") + ". Press Ctrl+C to stop.");
+    }
+
+    private void shutDown() {
+        if (metrics != null) {
+            metrics.close();
+        }
+        if (journal != null) {
+            try {
+                shutDownPersistence();
+            } catch (IOException e) {
+                System.out.println("\n Error saving state: " + e.getMessage());
+            }
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
     }
 
     private void displayWelcomeBanner() {
@@ -223,14 +379,7 @@ public class EcoRideCarRentalSystem {
 
     private void displayAllVehicles() {
         System.out.println("\n=== All Vehicles ===");
-        List<Vehicle> vehicles = vehicleService.getAllVehicles();
-        if (vehicles.isEmpty()) {
-            System.out.println("No vehicles available.");
-        } else {
-            for (Vehicle vehicle : vehicles) {
-                System.out.println(vehicle);
-            }
-        }
+        displayPages(vehicleService::getVehiclePage, "No vehicles available.", System.out::println);
     }
 
     private void displayAvailableVehicles() {
@@ -307,14 +456,7 @@ public class EcoRideCarRentalSystem {
 
     private void displayAllCustomers() {
         System.out.println("\n=== All Customers ===");
-        List<Customer> customers = customerService.getAllCustomers();
-        if (customers.isEmpty()) {
-            System.out.println("No customers registered.");
-        } else {
-            for (Customer customer : customers) {
-                System.out.println(customer);
-            }
-        }
+        displayPages(customerService::getCustomerPage, "No customers registered.", System.out::println);
     }
 
     // ==================== BOOKING MANAGEMENT ====================
@@ -380,11 +522,15 @@ public class EcoRideCarRentalSystem {
             System.out.println("\n Customer registered successfully!");
         }
 
-        // Display available vehicles
-        System.out.println("\n=== Available Vehicles ===");
-        List<Vehicle> availableVehicles = vehicleService.getAvailableVehicles();
+        // Get rental period
+        LocalDate startDate = getDateInput("\nEnter Start Date (yyyy-MM-dd): ");
+        LocalDate endDate = getDateInput("Enter End Date (yyyy-MM-dd): ");
+
+        // Display vehicles free for the requested period
+        System.out.println("\n=== Vehicles Available From " + startDate + " To " + endDate + " ===");
+        List<Vehicle> availableVehicles = bookingService.getVehiclesFreeBetween(startDate, endDate);
         if (availableVehicles.isEmpty()) {
-            System.out.println(" No vehicles currently available.");
+            System.out.println(" No vehicles available for the selected dates.");
             return;
         }
         for (Vehicle vehicle : availableVehicles) {
@@ -393,8 +539,6 @@ public class EcoRideCarRentalSystem {
 
         // Get booking details
         String carId = getStringInput("\nEnter Car ID to book: ");
-        LocalDate startDate = getDateInput("Enter Start Date (yyyy-MM-dd): ");
-        LocalDate endDate = getDateInput("Enter End Date (yyyy-MM-dd): ");
         int totalKilometers = getIntInput("Enter Estimated Total Kilometers: ");
 
         try {
@@ -481,14 +625,7 @@ public class EcoRideCarRentalSystem {
 
     private void displayAllBookings() {
         System.out.println("\n=== All Bookings ===");
-        List<Booking> bookings = bookingService.getAllBookings();
-        if (bookings.isEmpty()) {
-            System.out.println("No bookings found.");
-        } else {
-            for (Booking booking : bookings) {
-                System.out.println(booking);
-            }
-        }
+        displayPages(bookingService::getBookingPage, "No bookings found.", System.out::println);
     }
 
     private void displayActiveBookings() {
@@ -513,6 +650,7 @@ public class EcoRideCarRentalSystem {
         System.out.println("│  2. View Invoice by Invoice ID                                │");
         System.out.println("│  3. View Invoice by Booking ID                                │");
         System.out.println("│  4. View All Invoices                                          │");
+        System.out.println("│  5. Invoice All Completed Bookings                             │");
         System.out.println("│  0. Back to Main Menu                                          │");
         System.out.println("└────────────────────────────────────────────────────────────────┘");
 
@@ -531,6 +669,9 @@ public class EcoRideCarRentalSystem {
             case 4:
                 displayAllInvoices();
                 break;
+            case 5:
+                invoiceCompletedBookings();
+                break;
             case 0:
                 break;
             default:
@@ -571,9 +712,9 @@ public class EcoRideCarRentalSystem {
         System.out.println("\n=== View Invoice ===");
         String invoiceId = getStringInput("Enter Invoice ID: ");
 
-        Optional<Invoice> invoiceOpt = invoiceService.findInvoiceById(invoiceId);
-        if (invoiceOpt.isPresent()) {
-            System.out.println(invoiceOpt.get());
+        Optional<String> rendered = invoiceService.getRenderedInvoice(invoiceId);
+        if (rendered.isPresent()) {
+            System.out.println(rendered.get());
         } else {
             System.out.println("\n Invoice not found.");
         }
@@ -585,7 +726,7 @@ public class EcoRideCarRentalSystem {
 
         Optional<Invoice> invoiceOpt = invoiceService.findInvoiceByBookingId(bookingId);
         if (invoiceOpt.isPresent()) {
-            System.out.println(invoiceOpt.get());
+            System.out.println(invoiceService.getRenderedInvoice(invoiceOpt.get().getInvoiceId()).get());
         } else {
             System.out.println("\n No invoice found for this booking.");
         }
@@ -593,16 +734,23 @@ public class EcoRideCarRentalSystem {
 
     private void displayAllInvoices() {
         System.out.println("\n=== All Invoices ===");
-        List<Invoice> invoices = invoiceService.getAllInvoices();
-        if (invoices.isEmpty()) {
-            System.out.println("No invoices generated yet.");
-        } else {
-            for (Invoice invoice : invoices) {
-                System.out.println("\n" + invoice.getInvoiceId() + " - Booking: " + 
-                        invoice.getBooking().getBookingId() + " - Amount: LKR " + 
-                        String.format("%.2f", invoice.getFinalAmount()));
-            }
+        displayPages(invoiceService::getInvoicePage, "No invoices generated yet.", invoice ->
+                System.out.println("\n" + invoice.getInvoiceId() + " - Booking: " +
+                        invoice.getBooking().getBookingId() + " - Amount: LKR " +
+                        String.format("%.2f", invoice.getFinalAmount())));
+    }
+
+    private void invoiceCompletedBookings() {
+        System.out.println("\n=== Invoice All Completed Bookings ===");
+        List<Booking> completed = bookingService.getCompletedBookings(LocalDate.now());
+        if (completed.isEmpty()) {
+            System.out.println("No completed bookings to invoice.");
+            return;
         }
+
+        BatchInvoiceResult result = invoiceService.generateInvoices(completed);
+        System.out.println("\n Batch invoicing finished.");
+        System.out.println(result);
     }
 
     // ==================== UTILITY METHODS ====================
@@ -643,6 +791,24 @@ public class EcoRideCarRentalSystem {
         }
     }
 
+    /**
+     * Prints a listing one page at a time, asking before fetching each further page
+     */
+    private <T> void displayPages(Page.Source<T> source, String emptyMessage, Consumer<T> printer) {
+        Page<T> page = source.fetch(Page.FIRST, DISPLAY_PAGE_SIZE);
+        if (page.isEmpty()) {
+            System.out.println(emptyMessage);
+            return;
+        }
+        while (true) {
+            page.getItems().forEach(printer);
+            if (!page.hasMore() || !getStringInput("\nShow more? (y/n): ").equalsIgnoreCase("y")) {
+                return;
+            }
+            page = source.fetch(page.getNextCursor(), DISPLAY_PAGE_SIZE);
+        }
+    }
+
     private String getStringInput(String prompt) {
         System.out.print(prompt);
         return scanner.nextLine().trim();
@@ -672,8 +838,43 @@ public class EcoRideCarRentalSystem {
         }
     }
 
-    public static void main(String[] args) {
-        EcoRideCarRentalSystem system = new EcoRideCarRentalSystem();
-        system.start();
+    public static void main(String[] args) throws IOException {
+        // State is saved under ./data unless another directory or --in-memory is given
+        Path dataDirectory = Paths.get("data");
+        String jdbcUrl = null;
+        int httpPort = -1;
+        long checkpointJournalBytes = Checkpointer.DEFAULT_MAX_JOURNAL_BYTES;
+        Duration checkpointInterval = Checkpointer.DEFAULT_INTERVAL;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--in-memory")) {
+                dataDirectory = null;
+            } else if (args[i].equals("--data-dir") && i + 1 < args.length) {
+                dataDirectory = Paths.get(args[++i]);
+            } else if (args[i].equals("--http")) {
+                // The port is optional
+                httpPort = i + 1 < args.length && args[i + 1].matches("\\d+")
+                        ? Integer.parseInt(args[++i]) : ApiServer.DEFAULT_PORT;
+            } else if (args[i].equals("--jdbc-url") && i + 1 < args.length) {
+                jdbcUrl = args[++i];
+            } else if (args[i].equals("--checkpoint-mb") && i + 1 < args.length) {
+                checkpointJournalBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (args[i].equals("--checkpoint-minutes") && i + 1 < args.length) {
+                checkpointInterval = Duration.ofMinutes(Long.parseLong(args[++i]));
+            }
+        }
+        EcoRideCarRentalSystem system;
+        if (jdbcUrl != null) {
+            // The JDBC driver (e.g. H2 or SQLite) must be on the classpath
+            system = new EcoRideCarRentalSystem(new ConnectionPool(jdbcUrl));
+        } else if (dataDirectory == null) {
+            system = new EcoRideCarRentalSystem();
+        } else {
+            system = new EcoRideCarRentalSystem(dataDirectory, checkpointJournalBytes, checkpointInterval);
+        }
+        if (httpPort >= 0) {
+            system.serve(httpPort);
+        } else {
+            system.start();
+        }
     }
 }
@@ -0,0 +1,20 @@
+package api;
+
+/**
+ * A request that cannot be served, answered with the given HTTP status and the
+ * message as the error text. Stack traces are not captured, since these are
+ * ordinary outcomes such as unknown IDs or malformed parameters.
+ */
+public class ApiException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int status;
+
+    public ApiException(int status, String message) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,136 @@
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An HTTP request split into the path segments below its resource and its
+ * parameters, taken from the query string and, for POST and PUT, from an
+ * application/x-www-form-urlencoded body
+ */
+final class ApiRequest {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final String method;
+    private final List<String> segments;
+    private final Map<String, String> parameters;
+
+    ApiRequest(HttpExchange exchange) throws IOException {
+        this.method = exchange.getRequestMethod();
+        String context = exchange.getHttpContext().getPath();
+        String path = exchange.getRequestURI().getRawPath().substring(context.length());
+        List<String> parts = new ArrayList<>();
+        for (String part : path.split("/")) {
+            if (!part.isEmpty()) {
+                parts.add(decode(part));
+            }
+        }
+        this.segments = Collections.unmodifiableList(parts);
+        this.parameters = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery());
+        if (method.equals("POST") || method.equals("PUT")) {
+            parse(readBody(exchange.getRequestBody()));
+        }
+    }
+
+    private static String readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void parse(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+    }
+
+    private static String decode(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Malformed URL encoding: " + encoded);
+        }
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * The path segments after the resource, e.g. [B0001, cancel] for /bookings/B0001/cancel
+     */
+    List<String> getSegments() {
+        return segments;
+    }
+
+    String segment(int index) {
+        return index < segments.size() ? segments.get(index) : null;
+    }
+
+    String parameter(String name) {
+        return parameters.get(name);
+    }
+
+    String requireParameter(String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new ApiException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    int requireInt(String name) {
+        String value = requireParameter(name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Parameter " + name + " must be a whole number: " + value);
+        }
+    }
+
+    LocalDate requireDate(String name) {
+        String value = requireParameter(name);
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, "Parameter " + name + " must be a date (yyyy-MM-dd): " + value);
+        }
+    }
+
+    <E extends Enum<E>> E requireEnum(String name, Class<E> type) {
+        return toEnum(name, requireParameter(name), type);
+    }
+
+    <E extends Enum<E>> E optionalEnum(String name, Class<E> type) {
+        String value = parameters.get(name);
+        return value == null || value.isEmpty() ? null : toEnum(name, value, type);
+    }
+
+    private static <E extends Enum<E>> E toEnum(String name, String value, Class<E> type) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Unknown " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import enums.AvailabilityStatus;
+import enums.RejectionCode;
+import enums.VehicleCategory;
+import metrics.MetricsRegistry;
+import services.BookingRejectedException;
+import services.BookingResult;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import services.repository.Page;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/JSON front end for the services, on the JDK's built-in HttpServer.
+ * Every request runs on its own virtual thread where the JDK has them (21+),
+ * otherwise on a cached pool of platform threads, so slow clients never hold
+ * up others. Responses are streamed through JsonWriter with chunked encoding;
+ * a body that fails part way drops the connection, so clients never take a
+ * truncated body for a complete one. Unexpected failures are logged and
+ * answered with a generic 500 Internal Server Error.
+ *
+ * Resources:
+ *   GET    /vehicles[?status=&category=]   GET /vehicles?start=&end= (free in that period)
+ *   GET    /vehicles/{carId}                POST /vehicles (carId, model, category)
+ *   PUT    /vehicles/{carId} (model, category and/or status)   DELETE /vehicles/{carId}
+ *   GET    /customers[?name=]               GET /customers/{id}   GET /customers/{id}/bookings
+ *   POST   /customers (nicOrPassport, name, contactNumber, email)   PUT /customers/{id}
+ *   GET    /bookings[?customerName=|?active=true]   GET /bookings/{id}
+ *   POST   /bookings (customerId, carId, startDate, endDate, kilometers)
+ *   PUT    /bookings/{id} (startDate, endDate, kilometers)   POST /bookings/{id}/cancel
+ *   GET    /invoices   GET /invoices/{id}   GET /invoices/{id}/document (plain text)
+ *   POST   /invoices (bookingId)
+ *   GET    /metrics (Prometheus text format)
+ * Parameters come from the query string or a form-encoded body. Failures are
+ * answered as {"error": "..."}. Bookings the services reject add the rejection
+ * code, as {"error": "...", "code": "VEHICLE_ALREADY_RESERVED"}, and get 404 Not
+ * Found for unknown vehicles or bookings and 409 Conflict otherwise.
+ */
+public final class ApiServer implements Closeable {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 1024;
+    private static final int RESPONSE_BUFFER_CHARS = 8 * 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+    // Full listings are read from storage this many entities at a time as they are streamed
+    private static final int LISTING_PAGE_SIZE = 256;
+    private static final System.Logger LOG = System.getLogger(ApiServer.class.getName());
+
+    private final VehicleService vehicleService;
+    private final CustomerService customerService;
+    private final BookingService bookingService;
+    private final InvoiceService invoiceService;
+    private final MetricsRegistry metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    public ApiServer(int port, VehicleService vehicleService, CustomerService customerService,
+                     BookingService bookingService, InvoiceService invoiceService) throws IOException {
+        this(port, vehicleService, customerService, bookingService, invoiceService,
+                metricsOf(vehicleService, customerService, bookingService, invoiceService));
+    }
+
+    /**
+     * Serves the given registry at /metrics, e.g. one also exposed over JMX
+     */
+    public ApiServer(int port, VehicleService vehicleService, CustomerService customerService,
+                     BookingService bookingService, InvoiceService invoiceService,
+                     MetricsRegistry metrics) throws IOException {
+        this.vehicleService = vehicleService;
+        this.customerService = customerService;
+        this.bookingService = bookingService;
+        this.invoiceService = invoiceService;
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "api-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/vehicles", exchange -> serve(exchange, this::vehicles));
+        server.createContext("/customers", exchange -> serve(exchange, this::customers));
+        server.createContext("/bookings", exchange -> serve(exchange, this::bookings));
+        server.createContext("/invoices", exchange -> serve(exchange, this::invoices));
+        server.createContext("/metrics", exchange -> serve(exchange, this::metrics));
+    }
+
+    private static MetricsRegistry metricsOf(VehicleService vehicleService, CustomerService customerService,
+                                             BookingService bookingService, InvoiceService invoiceService) {
+        MetricsRegistry metrics = new MetricsRegistry();
+        vehicleService.registerMetrics(metrics);
+        customerService.registerMetrics(metrics);
+        bookingService.registerMetrics(metrics);
+        invoiceService.registerMetrics(metrics);
+        return metrics;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor on JDKs that have it, looked up so this still compiles for release 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting requests, giving those in progress a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== Request handling ====================
+
+    private interface Route {
+        Response route(ApiRequest request) throws Exception;
+    }
+
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * A status and a body that is only produced once the headers are sent
+     */
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final JsonBody json;
+        private final String text;
+
+        private Response(int status, String contentType, JsonBody json, String text) {
+            this.status = status;
+            this.contentType = contentType;
+            this.json = json;
+            this.text = text;
+        }
+
+        static Response json(int status, JsonBody body) {
+            return new Response(status, JSON, body, null);
+        }
+
+        static Response ok(JsonBody body) {
+            return json(200, body);
+        }
+
+        static Response text(String text) {
+            return new Response(200, TEXT, null, text);
+        }
+
+        static Response noContent() {
+            return new Response(204, null, null, null);
+        }
+
+        static Response error(int status, String message) {
+            return json(status, json -> json.beginObject().name("error").value(message).endObject());
+        }
+    }
+
+    private void serve(HttpExchange exchange, Route route) {
+        try {
+            Response response;
+            try {
+                response = route.route(new ApiRequest(exchange));
+            } catch (ApiException e) {
+                response = Response.error(e.getStatus(), e.getMessage());
+            } catch (BookingRejectedException e) {
+                response = rejected(e);
+            } catch (RuntimeException e) {
+                // The details go to the server log, not to the client
+                logFailure(exchange, e);
+                response = Response.error(500, "Internal error");
+            } catch (Exception e) {
+                // Business rules rejected the change, e.g. the vehicle is already reserved
+                response = Response.error(409, e.getMessage());
+            }
+            send(exchange, response);
+            exchange.close();
+        } catch (IOException e) {
+            // The client went away; there is no one left to answer
+            exchange.close();
+        } catch (RuntimeException e) {
+            // The body failed after its headers went out, e.g. reading the next page of a
+            // listing. Closing the exchange would end the chunked body as if it were
+            // complete, so it is left open and the exception makes the server drop the connection.
+            logFailure(exchange, e);
+            throw e;
+        }
+    }
+
+    private static void logFailure(HttpExchange exchange, RuntimeException e) {
+        LOG.log(System.Logger.Level.ERROR, "Failed to answer " + exchange.getRequestMethod() + " "
+                + exchange.getRequestURI(), e);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        if (response.contentType == null) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", response.contentType);
+        // Length 0 selects chunked encoding, so the body is streamed as it is written
+        exchange.sendResponseHeaders(response.status, 0);
+        // Closed only once the body is complete, since closing ends the chunked encoding
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), RESPONSE_BUFFER_CHARS);
+        if (response.json != null) {
+            response.json.write(new JsonWriter(out));
+        } else {
+            out.write(response.text);
+        }
+        out.close();
+    }
+
+    private static ApiException notFound(String what, String id) {
+        return new ApiException(404, what + " not found with ID: " + id);
+    }
+
+    private static ApiException methodNotAllowed(ApiRequest request) {
+        return new ApiException(405, "Method " + request.getMethod() + " is not supported here");
+    }
+
+    private static JsonBody vehicleList(Iterable<Vehicle> vehicles) {
+        return json -> EntityJson.writeArray(json, vehicles, EntityJson::writeVehicle);
+    }
+
+    private static JsonBody bookingList(Iterable<Booking> bookings) {
+        return json -> EntityJson.writeArray(json, bookings, EntityJson::writeBooking);
+    }
+
+    // ==================== Vehicles ====================
+
+    private Response vehicles(ApiRequest request) {
+        String carId = request.segment(0);
+        if (request.getSegments().size() > 1) {
+            throw new ApiException(404, "Unknown resource");
+        }
+        switch (request.getMethod()) {
+            case "GET":
+                if (carId != null) {
+                    Vehicle vehicle = vehicleService.findVehicleById(carId).orElseThrow(() -> notFound("Vehicle", carId));
+                    return Response.ok(json -> EntityJson.writeVehicle(json, vehicle));
+                }
+                return Response.ok(vehicleList(listVehicles(request)));
+            case "POST":
+                if (carId != null) {
+                    throw methodNotAllowed(request);
+                }
+                Vehicle vehicle = new Vehicle(request.requireParameter("carId"), request.requireParameter("model"),
+                        request.requireEnum("category", VehicleCategory.class));
+                try {
+                    vehicleService.addVehicle(vehicle);
+                } catch (IllegalArgumentException e) {
+                    throw new ApiException(409, e.getMessage());
+                }
+                return Response.json(201, json -> EntityJson.writeVehicle(json, vehicle));
+            case "PUT":
+                return updateVehicle(request, carId);
+            case "DELETE":
+                if (carId == null || !vehicleService.removeVehicle(carId)) {
+                    throw notFound("Vehicle", carId);
+                }
+                return Response.noContent();
+            default:
+                throw methodNotAllowed(request);
+        }
+    }
+
+    private Iterable<Vehicle> listVehicles(ApiRequest request) {
+        if (request.parameter("start") != null || request.parameter("end") != null) {
+            return bookingService.getVehiclesFreeBetween(request.requireDate("start"), request.requireDate("end"));
+        }
+        AvailabilityStatus status = request.optionalEnum("status", AvailabilityStatus.class);
+        VehicleCategory category = request.optionalEnum("category", VehicleCategory.class);
+        if (status != null && category != null) {
+            return vehicleService.getVehiclesByStatusAndCategory(status, category);
+        } else if (status != null) {
+            return vehicleService.getVehiclesByStatus(status);
+        } else if (category != null) {
+            return vehicleService.getVehiclesByCategory(category);
+        }
+        return Page.all(vehicleService::getVehiclePage, LISTING_PAGE_SIZE);
+    }
+
+    private Response updateVehicle(ApiRequest request, String carId) {
+        Vehicle vehicle = carId == null ? null : vehicleService.findVehicleById(carId).orElse(null);
+        if (vehicle == null) {
+            throw notFound("Vehicle", carId);
+        }
+        AvailabilityStatus status = request.optionalEnum("status", AvailabilityStatus.class);
+        if (request.parameter("model") != null || request.parameter("category") != null) {
+            String model = request.parameter("model") != null ? request.parameter("model") : vehicle.getModel();
+            VehicleCategory category = request.optionalEnum("category", VehicleCategory.class);
+            vehicleService.updateVehicle(carId, model, category != null ? category : vehicle.getCategory());
+        }
+        if (status != null) {
+            vehicleService.updateAvailabilityStatus(carId, status);
+        }
+        return Response.ok(json -> EntityJson.writeVehicle(json, vehicle));
+    }
+
+    // ==================== Customers ====================
+
+    private Response customers(ApiRequest request) {
+        String customerId = request.segment(0);
+        String related = request.segment(1);
+        switch (request.getMethod()) {
+            case "GET":
+                if (customerId == null) {
+                    String name = request.parameter("name");
+                    Iterable<Customer> customers = name != null
+                            ? customerService.findCustomersByName(name)
+                            : Page.all(customerService::getCustomerPage, LISTING_PAGE_SIZE);
+                    return Response.ok(json -> EntityJson.writeArray(json, customers, EntityJson::writeCustomer));
+                }
+                Customer customer = findCustomer(customerId);
+                if (related == null) {
+                    return Response.ok(json -> EntityJson.writeCustomer(json, customer));
+                } else if (related.equals("bookings")) {
+                    return Response.ok(bookingList(bookingService.getBookingsByCustomer(customer.getCustomerId())));
+                }
+                throw new ApiException(404, "Unknown resource: " + related);
+            case "POST":
+                if (customerId != null) {
+                    throw methodNotAllowed(request);
+                }
+                String nicOrPassport = request.requireParameter("nicOrPassport");
+                boolean known = customerService.findCustomerByNicOrPassport(nicOrPassport).isPresent();
+                Customer registered = customerService.registerCustomer(nicOrPassport, request.requireParameter("name"),
+                        request.requireParameter("contactNumber"), request.requireParameter("email"));
+                // An already registered NIC/passport returns the existing customer
+                return Response.json(known ? 200 : 201, json -> EntityJson.writeCustomer(json, registered));
+            case "PUT":
+                Customer existing = findCustomer(customerId);
+                customerService.updateCustomer(existing.getCustomerId(),
+                        valueOr(request.parameter("name"), existing.getName()),
+                        valueOr(request.parameter("contactNumber"), existing.getContactNumber()),
+                        valueOr(request.parameter("email"), existing.getEmail()));
+                return Response.ok(json -> EntityJson.writeCustomer(json, existing));
+            default:
+                throw methodNotAllowed(request);
+        }
+    }
+
+    private Customer findCustomer(String customerId) {
+        if (customerId == null) {
+            throw new ApiException(400, "Missing customer ID");
+        }
+        return customerService.findCustomerById(customerId).orElseThrow(() -> notFound("Customer", customerId));
+    }
+
+    private static String valueOr(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    // ==================== Bookings ====================
+
+    private Response bookings(ApiRequest request) throws Exception {
+        String bookingId = request.segment(0);
+        String action = request.segment(1);
+        switch (request.getMethod()) {
+            case "GET":
+                if (bookingId == null) {
+                    return Response.ok(bookingList(listBookings(request)));
+                }
+                Booking booking = findBooking(bookingId);
+                return Response.ok(json -> EntityJson.writeBooking(json, booking));
+            case "POST":
+                if (bookingId == null) {
+                    return createBooking(request);
+                } else if ("cancel".equals(action)) {
+                    findBooking(bookingId);
+                    return bookingResponse(200, bookingService.tryCancelBooking(bookingId));
+                }
+                throw methodNotAllowed(request);
+            case "PUT":
+                findBooking(bookingId);
+                return bookingResponse(200, bookingService.tryUpdateBooking(bookingId,
+                        request.requireDate("startDate"), request.requireDate("endDate"),
+                        request.requireInt("kilometers")));
+            default:
+                throw methodNotAllowed(request);
+        }
+    }
+
+    private Iterable<Booking> listBookings(ApiRequest request) {
+        String customerName = request.parameter("customerName");
+        if (customerName != null) {
+            return bookingService.findBookingsByCustomerName(customerName);
+        } else if ("true".equals(request.parameter("active"))) {
+            return bookingService.getActiveBookings();
+        }
+        return Page.all(bookingService::getBookingPage, LISTING_PAGE_SIZE);
+    }
+
+    private Response createBooking(ApiRequest request) throws Exception {
+        Customer customer = findCustomer(request.requireParameter("customerId"));
+        String carId = request.requireParameter("carId");
+        LocalDate startDate = request.requireDate("startDate");
+        LocalDate endDate = request.requireDate("endDate");
+        int kilometers = request.requireInt("kilometers");
+        return bookingResponse(201, bookingService.tryCreateBooking(customer, carId, startDate, endDate, kilometers));
+    }
+
+    private static Response bookingResponse(int status, BookingResult result) {
+        if (!result.isAccepted()) {
+            return rejected(result.getRejection());
+        }
+        Booking booking = result.getBooking();
+        return Response.json(status, json -> EntityJson.writeBooking(json, booking));
+    }
+
+    private static Response rejected(BookingRejectedException rejection) {
+        RejectionCode code = rejection.getCode();
+        int status = code == RejectionCode.VEHICLE_NOT_FOUND || code == RejectionCode.BOOKING_NOT_FOUND ? 404 : 409;
+        return Response.json(status, json -> json.beginObject()
+                .name("error").value(rejection.getMessage())
+                .name("code").value(code.name())
+                .endObject());
+    }
+
+    private Booking findBooking(String bookingId) {
+        if (bookingId == null) {
+            throw new ApiException(400, "Missing booking ID");
+        }
+        return bookingService.findBookingById(bookingId).orElseThrow(() -> notFound("Booking", bookingId));
+    }
+
+    // ==================== Invoices ====================
+
+    private Response invoices(ApiRequest request) {
+        String invoiceId = request.segment(0);
+        String view = request.segment(1);
+        switch (request.getMethod()) {
+            case "GET":
+                if (invoiceId == null) {
+                    Iterable<Invoice> invoices = Page.all(invoiceService::getInvoicePage, LISTING_PAGE_SIZE);
+                    return Response.ok(json -> EntityJson.writeArray(json, invoices, EntityJson::writeInvoice));
+                } else if (view == null) {
+                    Invoice invoice = invoiceService.findInvoiceById(invoiceId)
+                            .orElseThrow(() -> notFound("Invoice", invoiceId));
+                    return Response.ok(json -> EntityJson.writeInvoice(json, invoice));
+                } else if (view.equals("document")) {
+                    return Response.text(invoiceService.getRenderedInvoice(invoiceId)
+                            .orElseThrow(() -> notFound("Invoice", invoiceId)));
+                }
+                throw new ApiException(404, "Unknown resource: " + view);
+            case "POST":
+                if (invoiceId != null) {
+                    throw methodNotAllowed(request);
+                }
+                Booking booking = findBooking(request.requireParameter("bookingId"));
+                if (!booking.isActive()) {
+                    throw new ApiException(409, "Cannot generate invoice for cancelled booking.");
+                }
+                // A booking is invoiced once, even by concurrent requests; asking again returns its invoice
+                Optional<Invoice> generated = invoiceService.generateInvoiceIfAbsent(booking);
+                if (generated.isPresent()) {
+                    return Response.json(201, json -> EntityJson.writeInvoice(json, generated.get()));
+                }
+                // Missing only if the concurrent request that claimed the booking failed to store its invoice
+                Invoice existing = invoiceService.findInvoiceByBookingId(booking.getBookingId())
+                        .orElseThrow(() -> new ApiException(409, "Invoice for booking " + booking.getBookingId()
+                                + " could not be generated; try again."));
+                return Response.ok(json -> EntityJson.writeInvoice(json, existing));
+            default:
+                throw methodNotAllowed(request);
+        }
+    }
+
+    // ==================== Metrics ====================
+
+    private Response metrics(ApiRequest request) throws IOException {
+        if (!request.getSegments().isEmpty()) {
+            throw new ApiException(404, "Unknown resource");
+        }
+        if (!request.getMethod().equals("GET")) {
+            throw methodNotAllowed(request);
+        }
+        StringBuilder text = new StringBuilder(16 * 1024);
+        metrics.writeText(text);
+        return Response.text(text.toString());
+    }
+}
@@ -0,0 +1,83 @@
+package api;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import pricing.PriceQuote;
+import pricing.PricingEngine;
+import java.io.IOException;
+
+/**
+ * JSON representations of the entities. Amounts are written from their cents
+ * values, so they are exact.
+ */
+final class EntityJson {
+    private EntityJson() {
+    }
+
+    static void writeVehicle(JsonWriter json, Vehicle vehicle) throws IOException {
+        json.beginObject()
+                .name("carId").value(vehicle.getCarId())
+                .name("model").value(vehicle.getModel())
+                .name("category").value(vehicle.getCategory().name())
+                .name("status").value(vehicle.getAvailabilityStatus().name())
+                .endObject();
+    }
+
+    static void writeCustomer(JsonWriter json, Customer customer) throws IOException {
+        json.beginObject()
+                .name("customerId").value(customer.getCustomerId())
+                .name("nicOrPassport").value(customer.getNicOrPassport())
+                .name("name").value(customer.getName())
+                .name("contactNumber").value(customer.getContactNumber())
+                .name("email").value(customer.getEmail())
+                .endObject();
+    }
+
+    static void writeBooking(JsonWriter json, Booking booking) throws IOException {
+        json.beginObject()
+                .name("bookingId").value(booking.getBookingId())
+                .name("customerId").value(booking.getCustomer().getCustomerId())
+                .name("customerName").value(booking.getCustomer().getName())
+                .name("carId").value(booking.getVehicle().getCarId())
+                .name("bookingDate").value(booking.getBookingDate().toString())
+                .name("startDate").value(booking.getStartDate().toString())
+                .name("endDate").value(booking.getEndDate().toString())
+                .name("rentalDays").value(booking.getRentalDays())
+                .name("totalKilometers").value(booking.getTotalKilometers())
+                .name("deposit").cents(PricingEngine.toCents(booking.getDepositAmount()))
+                .name("active").value(booking.isActive())
+                .endObject();
+    }
+
+    static void writeInvoice(JsonWriter json, Invoice invoice) throws IOException {
+        PriceQuote pricing = invoice.getPricing();
+        json.beginObject()
+                .name("invoiceId").value(invoice.getInvoiceId())
+                .name("bookingId").value(invoice.getBooking().getBookingId())
+                .name("generatedDate").value(invoice.getGeneratedDate().toString())
+                .name("rentalDays").value(pricing.getRentalDays())
+                .name("extraKm").value(pricing.getExtraKm())
+                .name("basePrice").cents(pricing.getBasePriceCents())
+                .name("extraKmCharges").cents(pricing.getExtraKmChargesCents())
+                .name("discount").cents(pricing.getDiscountCents())
+                .name("tax").cents(pricing.getTaxCents())
+                .name("totalBeforeDeposit").cents(pricing.getTotalBeforeDepositCents())
+                .name("depositDeduction").cents(pricing.getDepositDeductionCents())
+                .name("finalAmount").cents(pricing.getFinalAmountCents())
+                .endObject();
+    }
+
+    interface ElementWriter<T> {
+        void write(JsonWriter json, T element) throws IOException;
+    }
+
+    static <T> void writeArray(JsonWriter json, Iterable<T> elements, ElementWriter<T> writer) throws IOException {
+        json.beginArray();
+        for (T element : elements) {
+            writer.write(json, element);
+        }
+        json.endArray();
+    }
+}
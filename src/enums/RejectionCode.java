@@ -0,0 +1,29 @@
+package enums;
+
+/**
+ * Enum of the business rules that can reject a booking request, each with the
+ * format of the message shown for it
+ */
+public enum RejectionCode {
+    VEHICLE_NOT_FOUND("Vehicle not found with ID: %s"),
+    BOOKING_NOT_FOUND("Booking not found with ID: %s"),
+    INSUFFICIENT_NOTICE("Booking must be made at least %d days in advance."),
+    INVALID_DATE_RANGE("End date must be after start date."),
+    VEHICLE_NOT_AVAILABLE("Vehicle is not available for booking."),
+    VEHICLE_ALREADY_RESERVED("Vehicle is already reserved from %s to %s."),
+    ALREADY_CANCELLED("Booking is already cancelled."),
+    CANCELLATION_DEADLINE_PASSED("Booking cannot be cancelled. Cancellation deadline has passed "
+            + "(must cancel within %d days of booking)."),
+    UPDATE_DEADLINE_PASSED("Booking cannot be updated. Update deadline has passed "
+            + "(must update within %d days of booking).");
+
+    private final String messageFormat;
+
+    RejectionCode(String messageFormat) {
+        this.messageFormat = messageFormat;
+    }
+
+    public String getMessageFormat() {
+        return messageFormat;
+    }
+}
@@ -0,0 +1,129 @@
+package loadtest;
+
+import utils.LatencyHistogram;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation latencies and outcomes of a load test. Every worker records
+ * into the same histograms and counters, which take concurrent updates
+ * without locking.
+ */
+public final class LoadReport {
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> rejections = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    // The first unexpected exception, printed with the report so errors can be traced
+    private final AtomicReference<RuntimeException> firstError = new AtomicReference<>();
+    private final int threads;
+    private long elapsedNanos;
+
+    LoadReport(int threads) {
+        this.threads = threads;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            rejections.put(operation, new LongAdder());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    void record(Operation operation, long latencyNanos, boolean accepted) {
+        latencies.get(operation).record(latencyNanos);
+        if (!accepted) {
+            rejections.get(operation).increment();
+        }
+    }
+
+    void recordError(Operation operation, long latencyNanos, RuntimeException error) {
+        latencies.get(operation).record(latencyNanos);
+        errors.get(operation).increment();
+        firstError.compareAndSet(null, error);
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getCount(Operation operation) {
+        return latencies.get(operation).getCount();
+    }
+
+    /**
+     * Operations the services refused, e.g. bookings for a vehicle already reserved
+     */
+    public long getRejected(Operation operation) {
+        return rejections.get(operation).sum();
+    }
+
+    /**
+     * Operations that threw instead of completing or being refused, i.e. bugs or failures
+     */
+    public long getErrors(Operation operation) {
+        return errors.get(operation).sum();
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            total += getErrors(operation);
+        }
+        return total;
+    }
+
+    public RuntimeException getFirstError() {
+        return firstError.get();
+    }
+
+    public long getAccepted(Operation operation) {
+        return getCount(operation) - getRejected(operation) - getErrors(operation);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            total += getCount(operation);
+        }
+        return total;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getTotalCount() * 1e9 / elapsedNanos;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%d threads, %.1f s, %,d operations, %,.0f ops/s%n",
+                threads, elapsedNanos / 1e9, getTotalCount(), getThroughput());
+        out.printf("%-10s %12s %10s %8s %12s %10s %10s %10s %10s%n",
+                "operation", "count", "rejected", "errors", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies.get(operation);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            out.printf("%-10s %,12d %,10d %,8d %,12.0f %10s %10s %10s %10s%n", operation.getKey(),
+                    histogram.getCount(), getRejected(operation), getErrors(operation),
+                    histogram.getCount() * 1e9 / elapsedNanos,
+                    micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMax()));
+        }
+        RuntimeException error = firstError.get();
+        if (error != null) {
+            out.println("First error: " + error);
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+}
@@ -0,0 +1,264 @@
+package loadtest;
+
+import models.Booking;
+import models.Customer;
+import models.Vehicle;
+import enums.VehicleCategory;
+import services.BookingResult;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Headless load driver: runs a Workload's mix of operations against the
+ * service layer from many threads and reports throughput and latency
+ * percentiles per operation.
+ *
+ * Each worker keeps the bookings it created that are still open. Updates,
+ * cancellations and invoices act on one of them (a cancelled or invoiced
+ * booking is closed), and a worker with no open booking creates one instead.
+ * Requests the services refuse, such as a booking for dates already taken,
+ * are timed like any other and counted as rejected. Unexpected exceptions are
+ * counted as errors, so a broken service cannot pass for a high rejection rate.
+ *
+ * Usage: java loadtest.LoadTest [--threads N] [--seconds N] [--vehicles N]
+ *        [--customers N] [--skew X] [--mix book=30,search=30,...] [--seed N]
+ */
+public final class LoadTest {
+    private final Workload workload;
+    private final VehicleService vehicleService;
+    private final CustomerService customerService;
+    private final BookingService bookingService;
+    private final InvoiceService invoiceService;
+
+    private final Map<VehicleCategory, String[]> carIdsByCategory = new EnumMap<>(VehicleCategory.class);
+    private final Map<VehicleCategory, Workload.ZipfSampler> vehicleSamplers = new EnumMap<>(VehicleCategory.class);
+    private final Customer[] customers;
+    private final Workload.ZipfSampler customerSampler;
+
+    /**
+     * Creates in-memory services holding the workload's fleet and customers
+     */
+    public LoadTest(Workload workload) {
+        this(workload, new VehicleService(false), new CustomerService());
+    }
+
+    private LoadTest(Workload workload, VehicleService vehicleService, CustomerService customerService) {
+        this(workload, vehicleService, customerService, new BookingService(vehicleService, customerService));
+    }
+
+    private LoadTest(Workload workload, VehicleService vehicleService, CustomerService customerService,
+                     BookingService bookingService) {
+        this(workload, vehicleService, customerService, bookingService,
+                new InvoiceService(bookingService, customerService));
+    }
+
+    /**
+     * Drives the given services, adding the workload's fleet and customers to them
+     */
+    public LoadTest(Workload workload, VehicleService vehicleService, CustomerService customerService,
+                    BookingService bookingService, InvoiceService invoiceService) {
+        this.workload = workload;
+        this.vehicleService = vehicleService;
+        this.customerService = customerService;
+        this.bookingService = bookingService;
+        this.invoiceService = invoiceService;
+
+        VehicleCategory[] categories = VehicleCategory.values();
+        Map<VehicleCategory, List<String>> fleet = new EnumMap<>(VehicleCategory.class);
+        for (VehicleCategory category : categories) {
+            fleet.put(category, new ArrayList<>());
+        }
+        for (int i = 0; i < workload.getVehicles(); i++) {
+            VehicleCategory category = categories[i % categories.length];
+            Vehicle vehicle = new Vehicle(String.format("LT%05d", i), "Load Test " + category.getDisplayName(), category);
+            vehicleService.addVehicle(vehicle);
+            fleet.get(category).add(vehicle.getCarId());
+        }
+        for (VehicleCategory category : categories) {
+            List<String> carIds = fleet.get(category);
+            if (!carIds.isEmpty()) {
+                carIdsByCategory.put(category, carIds.toArray(new String[0]));
+                vehicleSamplers.put(category, workload.sampler(carIds.size()));
+            }
+        }
+
+        customers = new Customer[workload.getCustomers()];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = customerService.registerCustomer(String.format("LT%07dV", i), "Load Customer " + i,
+                    "0770000000", "load" + i + "@email.com");
+        }
+        customerSampler = workload.sampler(customers.length);
+    }
+
+    public BookingService getBookingService() {
+        return bookingService;
+    }
+
+    public CustomerService getCustomerService() {
+        return customerService;
+    }
+
+    public InvoiceService getInvoiceService() {
+        return invoiceService;
+    }
+
+    /**
+     * Runs the workload for its duration and returns what was measured
+     */
+    public LoadReport run() throws InterruptedException {
+        LoadReport report = new LoadReport(workload.getThreads());
+        long started = System.nanoTime();
+        long deadline = started + workload.getDuration().toNanos();
+        Operation[] tickets = workload.operationTickets();
+        Thread[] workers = new Thread[workload.getThreads()];
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = new Worker(i, new SplittableRandom(workload.getSeed() + i), tickets, report, deadline);
+            workers[i] = new Thread(worker, "load-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report.finish(System.nanoTime() - started);
+        return report;
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final SplittableRandom random;
+        private final Operation[] tickets;
+        private final LoadReport report;
+        private final long deadline;
+        // Bookings this worker created that are neither cancelled nor invoiced
+        private final List<Booking> open = new ArrayList<>();
+        private int registered;
+
+        private Worker(int index, SplittableRandom random, Operation[] tickets, LoadReport report, long deadline) {
+            this.index = index;
+            this.random = random;
+            this.tickets = tickets;
+            this.report = report;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                Operation operation = tickets[random.nextInt(tickets.length)];
+                if (operation.needsBooking() && open.isEmpty()) {
+                    operation = Operation.CREATE_BOOKING;
+                }
+                // The date is read outside the timing; it only changes at midnight
+                LocalDate firstBookableDay = LocalDate.now().plusDays(Booking.MIN_ADVANCE_BOOKING_DAYS);
+                long started = System.nanoTime();
+                try {
+                    boolean accepted = execute(operation, firstBookableDay);
+                    report.record(operation, System.nanoTime() - started, accepted);
+                } catch (RuntimeException e) {
+                    report.recordError(operation, System.nanoTime() - started, e);
+                }
+            }
+        }
+
+        // Rejections come back as results; anything thrown is an error
+        private boolean execute(Operation operation, LocalDate firstBookableDay) {
+            switch (operation) {
+                case REGISTER_CUSTOMER:
+                    int number = registered++;
+                    customerService.registerCustomer(String.format("LT%03d%07dN", index, number),
+                            "New Customer " + index + "-" + number, "0770000000", "new@email.com");
+                    return true;
+                case SEARCH_AVAILABILITY: {
+                    LocalDate startDate = workload.nextStartDate(random, firstBookableDay);
+                    bookingService.getVehiclesFreeBetween(startDate,
+                            startDate.plusDays(workload.nextRentalDays(random)));
+                    return true;
+                }
+                case CREATE_BOOKING: {
+                    VehicleCategory category = workload.nextCategory(random);
+                    String[] carIds = carIdsByCategory.get(category);
+                    if (carIds == null) {
+                        return false;
+                    }
+                    String carId = carIds[vehicleSamplers.get(category).next(random)];
+                    Customer customer = customers[customerSampler.next(random)];
+                    LocalDate startDate = workload.nextStartDate(random, firstBookableDay);
+                    int days = workload.nextRentalDays(random);
+                    BookingResult created = bookingService.tryCreateBooking(customer, carId, startDate,
+                            startDate.plusDays(days), workload.nextKilometers(random, days));
+                    if (created.isAccepted()) {
+                        open.add(created.getBooking());
+                    }
+                    return created.isAccepted();
+                }
+                case UPDATE_BOOKING: {
+                    Booking booking = open.get(random.nextInt(open.size()));
+                    LocalDate startDate = workload.nextStartDate(random, firstBookableDay);
+                    int days = workload.nextRentalDays(random);
+                    return bookingService.tryUpdateBooking(booking.getBookingId(), startDate,
+                            startDate.plusDays(days), workload.nextKilometers(random, days)).isAccepted();
+                }
+                case CANCEL_BOOKING:
+                    return bookingService.tryCancelBooking(takeOpenBooking().getBookingId()).isAccepted();
+                case GENERATE_INVOICE:
+                    invoiceService.generateInvoice(takeOpenBooking());
+                    return true;
+                default:
+                    throw new IllegalStateException("Unhandled operation: " + operation);
+            }
+        }
+
+        private Booking takeOpenBooking() {
+            int chosen = random.nextInt(open.size());
+            Booking booking = open.get(chosen);
+            open.set(chosen, open.get(open.size() - 1));
+            open.remove(open.size() - 1);
+            return booking;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Workload workload = new Workload();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "--threads": workload.threads(Integer.parseInt(value)); break;
+                    case "--seconds": workload.duration(Duration.ofSeconds(Long.parseLong(value))); break;
+                    case "--vehicles": workload.vehicles(Integer.parseInt(value)); break;
+                    case "--customers": workload.customers(Integer.parseInt(value)); break;
+                    case "--skew": workload.skew(Double.parseDouble(value)); break;
+                    case "--horizon-days": workload.horizonDays(Integer.parseInt(value)); break;
+                    case "--mix": workload.mix(value); break;
+                    case "--seed": workload.seed(Long.parseLong(value)); break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loadtest.LoadTest [--threads N] [--seconds N] [--vehicles N] "
+                    + "[--customers N] [--skew X] [--horizon-days N] [--mix book=30,search=30,...] [--seed N]");
+            System.exit(2);
+        }
+
+        System.out.printf("Preparing %,d vehicles and %,d customers...%n", workload.getVehicles(), workload.getCustomers());
+        LoadTest loadTest = new LoadTest(workload);
+        System.out.printf("Running %d threads for %d s (skew %.2f)...%n",
+                workload.getThreads(), workload.getDuration().getSeconds(), workload.getSkew());
+        loadTest.run().print(System.out);
+    }
+}
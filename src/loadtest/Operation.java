@@ -0,0 +1,39 @@
+package loadtest;
+
+/**
+ * Kinds of request the load test issues, each named by the key used in --mix
+ */
+public enum Operation {
+    REGISTER_CUSTOMER("register"),
+    SEARCH_AVAILABILITY("search"),
+    CREATE_BOOKING("book"),
+    UPDATE_BOOKING("update"),
+    CANCEL_BOOKING("cancel"),
+    GENERATE_INVOICE("invoice");
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Whether the operation acts on a booking the worker made earlier
+     */
+    public boolean needsBooking() {
+        return this == UPDATE_BOOKING || this == CANCEL_BOOKING || this == GENERATE_INVOICE;
+    }
+
+    public static Operation fromKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equalsIgnoreCase(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + key);
+    }
+}
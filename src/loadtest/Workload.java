@@ -0,0 +1,220 @@
+package loadtest;
+
+import enums.VehicleCategory;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Shape of a load test: how many workers run for how long against how much
+ * data, and how they pick operations, vehicles, customers and rental periods.
+ * Operations are drawn by weight from the mix. Vehicles and customers are drawn
+ * by rank from a Zipf distribution with the given skew, so with skew 0 every
+ * one is equally likely and with skew 1 the top few take a large share of the
+ * traffic, as popular cars and regular customers do. Rental periods start up to
+ * horizonDays after the earliest bookable day and last up to maxRentalDays.
+ */
+public final class Workload {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Duration duration = Duration.ofSeconds(30);
+    private int vehicles = 200;
+    private int customers = 10_000;
+    private double skew = 1.0;
+    private int horizonDays = 180;
+    private int maxRentalDays = 14;
+    private long seed = 42;
+    private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+    public Workload() {
+        mix.put(Operation.REGISTER_CUSTOMER, 5);
+        mix.put(Operation.SEARCH_AVAILABILITY, 30);
+        mix.put(Operation.CREATE_BOOKING, 30);
+        mix.put(Operation.UPDATE_BOOKING, 10);
+        mix.put(Operation.CANCEL_BOOKING, 5);
+        mix.put(Operation.GENERATE_INVOICE, 20);
+    }
+
+    public Workload threads(int threads) {
+        this.threads = requirePositive(threads, "threads");
+        return this;
+    }
+
+    public Workload duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    public Workload vehicles(int vehicles) {
+        this.vehicles = requirePositive(vehicles, "vehicles");
+        return this;
+    }
+
+    public Workload customers(int customers) {
+        this.customers = requirePositive(customers, "customers");
+        return this;
+    }
+
+    public Workload skew(double skew) {
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew must not be negative: " + skew);
+        }
+        this.skew = skew;
+        return this;
+    }
+
+    public Workload horizonDays(int horizonDays) {
+        this.horizonDays = requirePositive(horizonDays, "horizon days");
+        return this;
+    }
+
+    public Workload maxRentalDays(int maxRentalDays) {
+        this.maxRentalDays = requirePositive(maxRentalDays, "max rental days");
+        return this;
+    }
+
+    public Workload seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the relative weight of one operation; 0 leaves it out
+     */
+    public Workload weight(Operation operation, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + operation.getKey() + "=" + weight);
+        }
+        mix.put(operation, weight);
+        return this;
+    }
+
+    /**
+     * Sets weights from a list such as "book=40,search=40,invoice=20"; operations
+     * not listed keep their weight
+     */
+    public Workload mix(String weights) {
+        for (String entry : weights.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got: " + entry);
+            }
+            weight(Operation.fromKey(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    public int getCustomers() {
+        return customers;
+    }
+
+    public double getSkew() {
+        return skew;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getWeight(Operation operation) {
+        return mix.get(operation);
+    }
+
+    /**
+     * One ticket per unit of weight, so drawing an operation is a single array read.
+     * Built once per run before the workers start, which publishes it to them safely.
+     */
+    Operation[] operationTickets() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalStateException("The operation mix has no weight");
+        }
+        Operation[] tickets = new Operation[total];
+        int next = 0;
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                tickets[next++] = entry.getKey();
+            }
+        }
+        return tickets;
+    }
+
+    VehicleCategory nextCategory(SplittableRandom random) {
+        VehicleCategory[] categories = VehicleCategory.values();
+        return categories[random.nextInt(categories.length)];
+    }
+
+    LocalDate nextStartDate(SplittableRandom random, LocalDate firstBookableDay) {
+        return firstBookableDay.plusDays(random.nextInt(horizonDays));
+    }
+
+    int nextRentalDays(SplittableRandom random) {
+        return 1 + random.nextInt(maxRentalDays);
+    }
+
+    int nextKilometers(SplittableRandom random, int rentalDays) {
+        // Around the free allowance, sometimes well past it
+        return random.nextInt(rentalDays * 150) + 50;
+    }
+
+    ZipfSampler sampler(int size) {
+        return new ZipfSampler(size, skew);
+    }
+
+    private static int requirePositive(int value, String what) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Number of " + what + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Draws ranks 0..size-1 with probability proportional to 1 / (rank + 1)^skew
+     */
+    static final class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int size, double skew) {
+            cumulative = new double[size];
+            double total = 0;
+            for (int rank = 0; rank < size; rank++) {
+                total += 1 / Math.pow(rank + 1, skew);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < size; rank++) {
+                cumulative[rank] /= total;
+            }
+        }
+
+        int next(SplittableRandom random) {
+            double point = random.nextDouble();
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < point) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
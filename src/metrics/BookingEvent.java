@@ -0,0 +1,78 @@
+package metrics;
+
+import models.Vehicle;
+import enums.RejectionCode;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a booking request, timed from the call to its outcome.
+ * Rejected requests are recorded too, with the rejection code and reason. The event is allocated
+ * and begun on every call, which costs next to nothing when no recording has it
+ * enabled, and is only filled in when shouldCommit says a recording wants it.
+ * The duration threshold can be set in a recording's settings, e.g.
+ * ecoride.BookingCreated#threshold=1 ms.
+ */
+@Category({"EcoRide", "Bookings"})
+@StackTrace(false)
+public abstract class BookingEvent extends Event {
+    public static final String ACCEPTED = "accepted";
+    public static final String REJECTED = "rejected";
+    public static final String FAILED = "failed";
+
+    // Flight Recorder only records superclass fields that are not private
+    @Label("Booking ID")
+    String bookingId;
+
+    @Label("Car ID")
+    String carId;
+
+    @Label("Vehicle Category")
+    String category;
+
+    @Label("Outcome")
+    @Description("accepted, rejected by the business rules, or failed with an unexpected error")
+    String outcome;
+
+    @Label("Rejection Code")
+    @Description("The business rule that rejected the request")
+    String code;
+
+    @Label("Reason")
+    @Description("Why the request was rejected or failed")
+    String reason;
+
+    @Name("ecoride.BookingCreated")
+    @Label("Booking Created")
+    public static final class Created extends BookingEvent {
+    }
+
+    @Name("ecoride.BookingUpdated")
+    @Label("Booking Updated")
+    public static final class Updated extends BookingEvent {
+    }
+
+    @Name("ecoride.BookingCancelled")
+    @Label("Booking Cancelled")
+    public static final class Cancelled extends BookingEvent {
+    }
+
+    /**
+     * Fills in and commits an event that shouldCommit has accepted. The vehicle is
+     * null when the request named an unknown car or booking, the rejection code
+     * null unless the business rules rejected it, and the reason null when it succeeded.
+     */
+    public void complete(String bookingId, String carId, Vehicle vehicle, RejectionCode rejection, String reason) {
+        this.bookingId = bookingId;
+        this.carId = vehicle != null ? vehicle.getCarId() : carId;
+        this.category = vehicle != null ? vehicle.getCategory().name() : null;
+        this.outcome = rejection != null ? REJECTED : reason != null ? FAILED : ACCEPTED;
+        this.code = rejection == null ? null : rejection.name();
+        this.reason = reason;
+        commit();
+    }
+}
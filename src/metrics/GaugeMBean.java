@@ -0,0 +1,67 @@
+package metrics;
+
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only MBean with one double attribute per gauge, read when fetched.
+ * It describes the registry's current gauges each time, so gauges added after
+ * registration show up too.
+ */
+final class GaugeMBean implements DynamicMBean {
+    private final Map<String, MetricsRegistry.Gauge> gauges;
+
+    GaugeMBean(Map<String, MetricsRegistry.Gauge> gauges) {
+        this.gauges = gauges;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        MetricsRegistry.Gauge gauge = gauges.get(attribute);
+        if (gauge == null) {
+            throw new AttributeNotFoundException("Unknown gauge: " + attribute);
+        }
+        return gauge.value.getAsDouble();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList values = new AttributeList();
+        for (String attribute : attributes) {
+            MetricsRegistry.Gauge gauge = gauges.get(attribute);
+            if (gauge != null) {
+                values.add(new Attribute(attribute, gauge.value.getAsDouble()));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Gauges are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = gauges.values().stream()
+                .map(gauge -> new MBeanAttributeInfo(gauge.name, "double", gauge.help, true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        return new MBeanInfo(GaugeMBean.class.getName(), "EcoRide gauges", attributes, null, null, null);
+    }
+}
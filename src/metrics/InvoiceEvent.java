@@ -0,0 +1,59 @@
+package metrics;
+
+import models.Booking;
+import models.Invoice;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of an invoice generation, timed from the call until the
+ * invoice is priced, stored and journaled. Like BookingEvent, it is only filled
+ * in when a recording wants it.
+ */
+@Name("ecoride.InvoiceGenerated")
+@Label("Invoice Generated")
+@Category({"EcoRide", "Invoices"})
+@StackTrace(false)
+public final class InvoiceEvent extends Event {
+    @Label("Invoice ID")
+    private String invoiceId;
+
+    @Label("Booking ID")
+    private String bookingId;
+
+    @Label("Car ID")
+    private String carId;
+
+    @Label("Vehicle Category")
+    private String category;
+
+    @Label("Final Amount")
+    private double finalAmount;
+
+    @Label("Outcome")
+    @Description("accepted, or failed with an unexpected error")
+    private String outcome;
+
+    @Label("Reason")
+    @Description("Why invoicing failed")
+    private String reason;
+
+    /**
+     * Fills in and commits an event that shouldCommit has accepted. The invoice is
+     * null when generation failed.
+     */
+    public void complete(Booking booking, Invoice invoice, Exception failure) {
+        this.invoiceId = invoice == null ? null : invoice.getInvoiceId();
+        this.bookingId = booking == null ? null : booking.getBookingId();
+        this.carId = booking == null ? null : booking.getVehicle().getCarId();
+        this.category = booking == null ? null : booking.getVehicle().getCategory().name();
+        this.finalAmount = invoice == null ? 0 : invoice.getFinalAmount();
+        this.outcome = failure == null ? BookingEvent.ACCEPTED : BookingEvent.FAILED;
+        this.reason = failure == null ? null : failure.getMessage();
+        commit();
+    }
+}
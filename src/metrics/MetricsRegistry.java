@@ -0,0 +1,187 @@
+package metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the operation metrics of the services and gauges of their state,
+ * and exposes them as JMX MBeans and as a Prometheus-style text scrape.
+ * Gauges are read when scraped, never on the service hot paths.
+ *
+ * MBeans (under the domain given to registerMBeans, "ecoride" by default):
+ *   ecoride:type=Operation,service=bookings,name=createBooking   one per operation
+ *   ecoride:type=Gauges                                          one attribute per gauge
+ */
+public final class MetricsRegistry implements Closeable {
+    public static final String DEFAULT_DOMAIN = "ecoride";
+    private static final String PREFIX = "ecoride_";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, ServiceMetrics> services = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private MBeanServer mbeanServer;
+
+    static final class Gauge {
+        final String name;
+        final String help;
+        final DoubleSupplier value;
+
+        private Gauge(String name, String help, DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    public void register(ServiceMetrics metrics) {
+        services.put(metrics.getService(), metrics);
+    }
+
+    /**
+     * Adds a gauge such as "vehicles_available", replacing any of the same name
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(name, help, value));
+    }
+
+    public Collection<ServiceMetrics> getServices() {
+        return services.values();
+    }
+
+    public double getGauge(String name) {
+        Gauge gauge = gauges.get(name);
+        if (gauge == null) {
+            throw new IllegalArgumentException("Unknown gauge: " + name);
+        }
+        return gauge.value.getAsDouble();
+    }
+
+    // ==================== Text scrape ====================
+
+    /**
+     * Writes every metric in the Prometheus text exposition format: call and failure
+     * counters and a latency summary in seconds per operation, then the gauges
+     */
+    public void writeText(Appendable out) throws IOException {
+        String calls = PREFIX + "operation_calls_total";
+        String failures = PREFIX + "operation_failures_total";
+        String latency = PREFIX + "operation_latency_seconds";
+        header(out, calls, "Calls of each service operation", "counter");
+        for (OperationMetrics operation : operations()) {
+            sample(out, calls, labels(operation, null), Long.toString(operation.getCalls()));
+        }
+        header(out, failures, "Calls that threw or had no effect", "counter");
+        for (OperationMetrics operation : operations()) {
+            sample(out, failures, labels(operation, null), Long.toString(operation.getFailures()));
+        }
+        header(out, latency, "Latency of each service operation", "summary");
+        for (OperationMetrics operation : operations()) {
+            for (double quantile : QUANTILES) {
+                long nanos = operation.getLatencies().getValueAtPercentile(quantile * 100);
+                sample(out, latency, labels(operation, quantile), seconds(nanos));
+            }
+            sample(out, latency + "_sum", labels(operation, null), seconds(operation.getLatencies().getSum()));
+            sample(out, latency + "_count", labels(operation, null), Long.toString(operation.getCalls()));
+        }
+        for (Gauge gauge : gauges.values()) {
+            header(out, PREFIX + gauge.name, gauge.help, "gauge");
+            sample(out, PREFIX + gauge.name, "", number(gauge.value.getAsDouble()));
+        }
+    }
+
+    private List<OperationMetrics> operations() {
+        List<OperationMetrics> operations = new ArrayList<>();
+        for (ServiceMetrics service : services.values()) {
+            operations.addAll(service.getOperations());
+        }
+        return operations;
+    }
+
+    private static void header(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String labels, String value) throws IOException {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String labels(OperationMetrics operation, Double quantile) {
+        StringBuilder labels = new StringBuilder("{service=\"").append(operation.getService())
+                .append("\",operation=\"").append(operation.getOperation()).append('"');
+        if (quantile != null) {
+            labels.append(",quantile=\"").append(quantile).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    private static String seconds(long nanos) {
+        return number(nanos / 1e9);
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    // ==================== JMX ====================
+
+    public void registerMBeans() throws JMException {
+        registerMBeans(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    /**
+     * Registers an MBean per operation of the services registered so far, and one
+     * for the gauges, which also shows gauges added later
+     */
+    public synchronized void registerMBeans(MBeanServer server, String domain) throws JMException {
+        if (mbeanServer != null) {
+            throw new IllegalStateException("MBeans are already registered");
+        }
+        mbeanServer = server;
+        try {
+            for (OperationMetrics operation : operations()) {
+                registerMBean(operation, new ObjectName(domain + ":type=Operation,service="
+                        + ObjectName.quote(operation.getService()) + ",name=" + ObjectName.quote(operation.getOperation())));
+            }
+            registerMBean(new GaugeMBean(gauges), new ObjectName(domain + ":type=Gauges"));
+        } catch (JMException e) {
+            unregisterMBeans();
+            throw e;
+        }
+    }
+
+    private void registerMBean(Object mbean, ObjectName name) throws JMException {
+        mbeanServer.registerMBean(mbean, name);
+        registeredNames.add(name);
+    }
+
+    public synchronized void unregisterMBeans() {
+        for (ObjectName name : registeredNames) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already unregistered by someone else
+            }
+        }
+        registeredNames.clear();
+        mbeanServer = null;
+    }
+
+    @Override
+    public void close() {
+        if (mbeanServer != null) {
+            unregisterMBeans();
+        }
+    }
+}
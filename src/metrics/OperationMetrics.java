@@ -0,0 +1,154 @@
+package metrics;
+
+import utils.LatencyHistogram;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Call count, failure count and latency histogram of one service operation.
+ * Recording a call is a clock read plus a few uncontended atomic updates, so
+ * the services time every call. A call fails when it throws, or for operations
+ * timed with timeOutcome or a result check, when it reports having had no effect.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+    private final String service;
+    private final String operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    // Timed bodies may throw checked exceptions, so services keep their throws clauses
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    public interface VoidCall<E extends Exception> {
+        void call() throws E;
+    }
+
+    public interface OutcomeCall<E extends Exception> {
+        boolean call() throws E;
+    }
+
+    OperationMetrics(String service, String operation) {
+        this.service = service;
+        this.operation = operation;
+    }
+
+    public <T, E extends Exception> T time(Call<T, E> call) throws E {
+        long started = System.nanoTime();
+        try {
+            T result = call.call();
+            latencies.record(System.nanoTime() - started);
+            return result;
+        } catch (Exception e) {
+            fail(started);
+            throw e;
+        }
+    }
+
+    /**
+     * Times a call that reports rejections in its result rather than by throwing,
+     * counting the results the check does not accept as failures
+     */
+    public <T, E extends Exception> T time(Call<T, E> call, Predicate<? super T> succeeded) throws E {
+        long started = System.nanoTime();
+        try {
+            T result = call.call();
+            if (succeeded.test(result)) {
+                latencies.record(System.nanoTime() - started);
+            } else {
+                fail(started);
+            }
+            return result;
+        } catch (Exception e) {
+            fail(started);
+            throw e;
+        }
+    }
+
+    public <E extends Exception> void run(VoidCall<E> call) throws E {
+        long started = System.nanoTime();
+        try {
+            call.call();
+            latencies.record(System.nanoTime() - started);
+        } catch (Exception e) {
+            fail(started);
+            throw e;
+        }
+    }
+
+    /**
+     * Times a call whose false result means it had no effect, e.g. an update of an
+     * unknown vehicle, and counts that as a failure
+     */
+    public <E extends Exception> boolean timeOutcome(OutcomeCall<E> call) throws E {
+        long started = System.nanoTime();
+        try {
+            boolean succeeded = call.call();
+            if (succeeded) {
+                latencies.record(System.nanoTime() - started);
+            } else {
+                fail(started);
+            }
+            return succeeded;
+        } catch (Exception e) {
+            fail(started);
+            throw e;
+        }
+    }
+
+    private void fail(long started) {
+        latencies.record(System.nanoTime() - started);
+        failures.increment();
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Latencies in nanoseconds of every call, failed or not
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latencies.getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latencies.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latencies.getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latencies.getMax() / 1000.0;
+    }
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+/**
+ * JMX view of one service operation's metrics. Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+    long getCalls();
+
+    long getFailures();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,37 @@
+package metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The operation metrics of one service, e.g. "bookings". A service creates them
+ * along with itself and times every public operation, so they count calls made
+ * before any registry exposes them.
+ */
+public final class ServiceMetrics {
+    private final String service;
+    private final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+
+    public ServiceMetrics(String service) {
+        this.service = service;
+    }
+
+    /**
+     * The metrics of the named operation, created on first use
+     */
+    public OperationMetrics operation(String name) {
+        return operations.computeIfAbsent(name, key -> new OperationMetrics(service, key));
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    /**
+     * Every operation, in name order
+     */
+    public Collection<OperationMetrics> getOperations() {
+        return operations.values();
+    }
+}
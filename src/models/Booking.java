@@ -1,6 +1,7 @@
 package models;
 
 import enums.VehicleCategory;
+import utils.IdAllocator;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 
@@ -8,6 +9,10 @@ import java.time.temporal.ChronoUnit;
  * Booking class representing a car rental reservation
  */
 public class Booking {
+    public static final String ID_PREFIX = "B";
+
+    private long bookingNumber;
+    // Rendered lazily from bookingNumber
     private String bookingId;
     private Customer customer;
     private Vehicle vehicle;
@@ -24,7 +29,13 @@ public class Booking {
 
     public Booking(String bookingId, Customer customer, Vehicle vehicle, 
                    LocalDate startDate, LocalDate endDate, int totalKilometers) {
+        this(IdAllocator.parseRequired(ID_PREFIX, bookingId), customer, vehicle, startDate, endDate, totalKilometers);
         this.bookingId = bookingId;
+    }
+
+    public Booking(long bookingNumber, Customer customer, Vehicle vehicle,
+                   LocalDate startDate, LocalDate endDate, int totalKilometers) {
+        this.bookingNumber = bookingNumber;
         this.customer = customer;
         this.vehicle = vehicle;
         this.bookingDate = LocalDate.now();
@@ -37,13 +48,23 @@ public class Booking {
 
     // Getters and Setters
     public String getBookingId() {
-        return bookingId;
+        String id = bookingId;
+        if (id == null) {
+            id = IdAllocator.render(ID_PREFIX, bookingNumber);
+            bookingId = id;
+        }
+        return id;
     }
 
     public void setBookingId(String bookingId) {
+        this.bookingNumber = IdAllocator.parseRequired(ID_PREFIX, bookingId);
         this.bookingId = bookingId;
     }
 
+    public long getBookingNumber() {
+        return bookingNumber;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -120,7 +141,7 @@ public class Booking {
     @Override
     public String toString() {
         return String.format("Booking ID: %s | Customer: %s | Vehicle: %s (%s) | Period: %s to %s | Days: %d | KM: %d | Status: %s",
-                bookingId, customer.getName(), vehicle.getModel(), vehicle.getCarId(),
+                getBookingId(), customer.getName(), vehicle.getModel(), vehicle.getCarId(),
                 startDate, endDate, getRentalDays(), totalKilometers, isActive ? "Active" : "Cancelled");
     }
 }
@@ -1,9 +1,15 @@
 package models;
 
+import utils.IdAllocator;
+
 /**
  * Customer class representing a rental customer
  */
 public class Customer {
+    public static final String ID_PREFIX = "C";
+
+    private long customerNumber;
+    // Rendered lazily from customerNumber
     private String customerId;
     private String nicOrPassport;
     private String name;
@@ -12,7 +18,13 @@ public class Customer {
 
     public Customer(String customerId, String nicOrPassport, String name, 
                    String contactNumber, String email) {
+        this(IdAllocator.parseRequired(ID_PREFIX, customerId), nicOrPassport, name, contactNumber, email);
         this.customerId = customerId;
+    }
+
+    public Customer(long customerNumber, String nicOrPassport, String name,
+                    String contactNumber, String email) {
+        this.customerNumber = customerNumber;
         this.nicOrPassport = nicOrPassport;
         this.name = name;
         this.contactNumber = contactNumber;
@@ -21,13 +33,23 @@ public class Customer {
 
     // Getters and Setters
     public String getCustomerId() {
-        return customerId;
+        String id = customerId;
+        if (id == null) {
+            id = IdAllocator.render(ID_PREFIX, customerNumber);
+            customerId = id;
+        }
+        return id;
     }
 
     public void setCustomerId(String customerId) {
+        this.customerNumber = IdAllocator.parseRequired(ID_PREFIX, customerId);
         this.customerId = customerId;
     }
 
+    public long getCustomerNumber() {
+        return customerNumber;
+    }
+
     public String getNicOrPassport() {
         return nicOrPassport;
     }
@@ -63,6 +85,6 @@ public class Customer {
     @Override
     public String toString() {
         return String.format("Customer ID: %s | Name: %s | NIC/Passport: %s | Contact: %s | Email: %s",
-                customerId, name, nicOrPassport, contactNumber, email);
+                getCustomerId(), name, nicOrPassport, contactNumber, email);
     }
 }
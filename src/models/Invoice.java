@@ -1,67 +1,74 @@
 package models;
 
+import pricing.PriceQuote;
+import pricing.PricingEngine;
+import utils.IdAllocator;
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
 Invoice class representing a rental invoice with detailed pricing breakdown
  */
 public class Invoice {
+    public static final String ID_PREFIX = "INV";
+
+    private long invoiceNumber;
+    // Rendered lazily from invoiceNumber
     private String invoiceId;
     private Booking booking;
     private LocalDateTime generatedDate;
-    private double basePrice;
-    private double extraKmCharges;
-    private double discountAmount;
-    private double taxAmount;
-    private double totalBeforeDeposit;
-    private double depositDeduction;
-    private double finalAmount;
+    // Pricing breakdown in cents, computed by PricingEngine. Copy-on-write: a
+    // published quote is never changed, so readers need no lock to see a
+    // consistent breakdown and repricing publishes a new one
+    private volatile PriceQuote pricing;
 
     public Invoice(String invoiceId, Booking booking) {
+        this(IdAllocator.parseRequired(ID_PREFIX, invoiceId), booking);
         this.invoiceId = invoiceId;
+    }
+
+    public Invoice(long invoiceNumber, Booking booking) {
+        this(invoiceNumber, booking, LocalDateTime.now());
+    }
+
+    public Invoice(long invoiceNumber, Booking booking, LocalDateTime generatedDate) {
+        this.invoiceNumber = invoiceNumber;
         this.booking = booking;
-        this.generatedDate = LocalDateTime.now();
+        this.generatedDate = generatedDate;
         calculatePricing();
     }
 
     private void calculatePricing() {
-        Vehicle vehicle = booking.getVehicle();
-        int rentalDays = booking.getRentalDays();
-        int totalKm = booking.getTotalKilometers();
-
-        // Calculate base price
-        basePrice = vehicle.getDailyRentalPrice() * rentalDays;
-
-        // Calculate extra km charges
-        int freeKm = vehicle.getCategory().getFreeKmPerDay() * rentalDays;
-        int extraKm = Math.max(0, totalKm - freeKm);
-        extraKmCharges = extraKm * vehicle.getCategory().getExtraKmCharge();
-
-        // Apply discount for 7+ days
-        if (rentalDays >= 7) {
-            discountAmount = basePrice * 0.10;
-        } else {
-            discountAmount = 0.0;
-        }
-
-        // Calculate subtotal after discount
-        double subtotal = basePrice - discountAmount + extraKmCharges;
-
-        // Calculate tax
-        taxAmount = subtotal * vehicle.getCategory().getTaxRate();
-
-        // Calculate total before deposit
-        totalBeforeDeposit = subtotal + taxAmount;
+        pricing = PricingEngine.quote(booking.getVehicle().getCategory(), booking.getRentalDays(),
+                booking.getTotalKilometers(), PricingEngine.toCents(booking.getDepositAmount()), new PriceQuote());
+    }
 
-        // Deduct deposit
-        depositDeduction = booking.getDepositAmount();
-        finalAmount = totalBeforeDeposit - depositDeduction;
+    /**
+     * Brings the pricing in line with the booking's current dates and kilometers,
+     * recomputing only the affected line items. Returns the PriceQuote flags of
+     * the line items that changed, or 0 if the invoice was already current.
+     * Concurrent repricings serialize; readers keep the quote they already hold.
+     */
+    public synchronized int reprice() {
+        PriceQuote repriced = pricing.copy();
+        int changed = PricingEngine.reprice(booking.getVehicle().getCategory(), booking.getRentalDays(),
+                booking.getTotalKilometers(), PricingEngine.toCents(booking.getDepositAmount()), repriced);
+        pricing = repriced;
+        return changed;
     }
 
     // Getters
     public String getInvoiceId() {
-        return invoiceId;
+        String id = invoiceId;
+        if (id == null) {
+            id = IdAllocator.render(ID_PREFIX, invoiceNumber);
+            invoiceId = id;
+        }
+        return id;
+    }
+
+    public long getInvoiceNumber() {
+        return invoiceNumber;
     }
 
     public Booking getBooking() {
@@ -73,99 +80,47 @@ public class Invoice {
     }
 
     public double getBasePrice() {
-        return basePrice;
+        return PricingEngine.toAmount(pricing.getBasePriceCents());
     }
 
     public double getExtraKmCharges() {
-        return extraKmCharges;
+        return PricingEngine.toAmount(pricing.getExtraKmChargesCents());
     }
 
     public double getDiscountAmount() {
-        return discountAmount;
+        return PricingEngine.toAmount(pricing.getDiscountCents());
     }
 
     public double getTaxAmount() {
-        return taxAmount;
+        return PricingEngine.toAmount(pricing.getTaxCents());
     }
 
     public double getTotalBeforeDeposit() {
-        return totalBeforeDeposit;
+        return PricingEngine.toAmount(pricing.getTotalBeforeDepositCents());
     }
 
     public double getDepositDeduction() {
-        return depositDeduction;
+        return PricingEngine.toAmount(pricing.getDepositDeductionCents());
     }
 
     public double getFinalAmount() {
-        return finalAmount;
+        return PricingEngine.toAmount(pricing.getFinalAmountCents());
+    }
+
+    /**
+     * The current pricing breakdown, which never changes once returned. Read it
+     * once to get line items that add up, as separate getters may straddle a reprice.
+     */
+    public PriceQuote getPricing() {
+        return pricing;
     }
 
     public String getFormattedInvoice() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        StringBuilder sb = new StringBuilder();
-        
-        sb.append("\n╔════════════════════════════════════════════════════════════════╗\n");
-        sb.append("║                    ECORIDE CAR RENTAL SYSTEM                   ║\n");
-        sb.append("║                         RENTAL INVOICE                         ║\n");
-        sb.append("╚════════════════════════════════════════════════════════════════╝\n\n");
-        
-        sb.append(String.format("Invoice ID: %s\n", invoiceId));
-        sb.append(String.format("Generated: %s\n", generatedDate.format(formatter)));
-        sb.append("\n─────────────────────────────────────────────────────────────────\n");
-        sb.append("CUSTOMER DETAILS\n");
-        sb.append("─────────────────────────────────────────────────────────────────\n");
-        sb.append(String.format("Name: %s\n", booking.getCustomer().getName()));
-        sb.append(String.format("NIC/Passport: %s\n", booking.getCustomer().getNicOrPassport()));
-        sb.append(String.format("Contact: %s\n", booking.getCustomer().getContactNumber()));
-        sb.append(String.format("Email: %s\n", booking.getCustomer().getEmail()));
-        
-        sb.append("\n─────────────────────────────────────────────────────────────────\n");
-        sb.append("VEHICLE DETAILS\n");
-        sb.append("─────────────────────────────────────────────────────────────────\n");
-        sb.append(String.format("Car ID: %s\n", booking.getVehicle().getCarId()));
-        sb.append(String.format("Model: %s\n", booking.getVehicle().getModel()));
-        sb.append(String.format("Category: %s\n", booking.getVehicle().getCategory().getDisplayName()));
-        
-        sb.append("\n─────────────────────────────────────────────────────────────────\n");
-        sb.append("RENTAL DETAILS\n");
-        sb.append("─────────────────────────────────────────────────────────────────\n");
-        sb.append(String.format("Booking ID: %s\n", booking.getBookingId()));
-        sb.append(String.format("Start Date: %s\n", booking.getStartDate()));
-        sb.append(String.format("End Date: %s\n", booking.getEndDate()));
-        sb.append(String.format("Rental Duration: %d days\n", booking.getRentalDays()));
-        sb.append(String.format("Total Kilometers: %d km\n", booking.getTotalKilometers()));
-        
-        sb.append("\n─────────────────────────────────────────────────────────────────\n");
-        sb.append("PRICING BREAKDOWN\n");
-        sb.append("─────────────────────────────────────────────────────────────────\n");
-        sb.append(String.format("Base Rental (LKR %.2f × %d days)    LKR %10.2f\n", 
-                booking.getVehicle().getDailyRentalPrice(), booking.getRentalDays(), basePrice));
-        
-        if (extraKmCharges > 0) {
-            int freeKm = booking.getVehicle().getCategory().getFreeKmPerDay() * booking.getRentalDays();
-            int extraKm = booking.getTotalKilometers() - freeKm;
-            sb.append(String.format("Extra KM Charges (%d km × LKR %.2f)    LKR %10.2f\n", 
-                    extraKm, booking.getVehicle().getCategory().getExtraKmCharge(), extraKmCharges));
-        }
-        
-        if (discountAmount > 0) {
-            sb.append(String.format("Discount (10%% for 7+ days)           LKR -%9.2f\n", discountAmount));
-        }
-        
-        sb.append(String.format("Tax (%.0f%%)                              LKR %10.2f\n", 
-                booking.getVehicle().getCategory().getTaxRate() * 100, taxAmount));
-        sb.append("                                          ─────────────\n");
-        sb.append(String.format("Total Before Deposit                  LKR %10.2f\n", totalBeforeDeposit));
-        sb.append(String.format("Deposit Deduction                     LKR -%9.2f\n", depositDeduction));
-        sb.append("                                          ═════════════\n");
-        sb.append(String.format("FINAL AMOUNT DUE                      LKR %10.2f\n", finalAmount));
-        sb.append("                                          ═════════════\n");
-        
-        sb.append("\n─────────────────────────────────────────────────────────────────\n");
-        sb.append("Thank you for choosing EcoRide Car Rental System!\n");
-        sb.append("─────────────────────────────────────────────────────────────────\n");
-        
-        return sb.toString();
+        return InvoiceRenderer.render(this);
+    }
+
+    public void writeFormattedInvoice(Appendable out) throws IOException {
+        InvoiceRenderer.render(this, out);
     }
 
     @Override
@@ -0,0 +1,249 @@
+package models;
+
+import pricing.PricingEngine;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Renders the printable invoice document.
+ * The layout is compiled once into a fixed sequence of literal text and field
+ * writers, and numbers and dates are formatted by hand, so rendering does no
+ * format-string parsing and builds no formatters. Output goes straight to any
+ * Appendable (a StringBuilder, or a Writer for exports and printing).
+ */
+public final class InvoiceRenderer {
+    private static final String SECTION_RULE = "─────────────────────────────────────────────────────────────────";
+    private static final String SECTION_BREAK = "\n" + SECTION_RULE + "\n";
+    private static final String SUBTOTAL_RULE = "                                          ─────────────\n";
+    private static final String TOTAL_RULE = "                                          ═════════════\n";
+    private static final int AMOUNT_WIDTH = 10;
+    private static final int NEGATIVE_AMOUNT_WIDTH = 9;
+    private static final int ESTIMATED_LENGTH = 2048;
+
+    private static final Segment[] TEMPLATE = compile();
+
+    private InvoiceRenderer() {
+    }
+
+    public static String render(Invoice invoice) {
+        StringBuilder sb = new StringBuilder(ESTIMATED_LENGTH);
+        try {
+            render(invoice, sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    public static void render(Invoice invoice, Appendable out) throws IOException {
+        write(TEMPLATE, invoice, out);
+    }
+
+    private static void write(Segment[] segments, Invoice invoice, Appendable out) throws IOException {
+        for (Segment segment : segments) {
+            segment.write(invoice, out);
+        }
+    }
+
+    private static Segment[] compile() {
+        TemplateBuilder t = new TemplateBuilder();
+        t.text("\n╔════════════════════════════════════════════════════════════════╗\n║                    ECORIDE CAR RENTAL SYSTEM                   ║\n║                         RENTAL INVOICE                         ║\n╚════════════════════════════════════════════════════════════════╝\n\n");
+        t.text("Invoice ID: ").field((inv, out) -> out.append(inv.getInvoiceId())).text("\n");
+        t.text("Generated: ").field((inv, out) -> appendDateTime(out, inv.getGeneratedDate())).text("\n");
+
+        t.text(SECTION_BREAK).text("CUSTOMER DETAILS\n").text(SECTION_RULE + "\n");
+        t.text("Name: ").field((inv, out) -> out.append(inv.getBooking().getCustomer().getName())).text("\n");
+        t.text("NIC/Passport: ").field((inv, out) -> out.append(inv.getBooking().getCustomer().getNicOrPassport())).text("\n");
+        t.text("Contact: ").field((inv, out) -> out.append(inv.getBooking().getCustomer().getContactNumber())).text("\n");
+        t.text("Email: ").field((inv, out) -> out.append(inv.getBooking().getCustomer().getEmail())).text("\n");
+
+        t.text(SECTION_BREAK).text("VEHICLE DETAILS\n").text(SECTION_RULE + "\n");
+        t.text("Car ID: ").field((inv, out) -> out.append(inv.getBooking().getVehicle().getCarId())).text("\n");
+        t.text("Model: ").field((inv, out) -> out.append(inv.getBooking().getVehicle().getModel())).text("\n");
+        t.text("Category: ").field((inv, out) -> out.append(inv.getBooking().getVehicle().getCategory().getDisplayName())).text("\n");
+
+        t.text(SECTION_BREAK).text("RENTAL DETAILS\n").text(SECTION_RULE + "\n");
+        t.text("Booking ID: ").field((inv, out) -> out.append(inv.getBooking().getBookingId())).text("\n");
+        t.text("Start Date: ").field((inv, out) -> appendDate(out, inv.getBooking().getStartDate())).text("\n");
+        t.text("End Date: ").field((inv, out) -> appendDate(out, inv.getBooking().getEndDate())).text("\n");
+        t.text("Rental Duration: ").field((inv, out) -> appendLong(out, inv.getBooking().getRentalDays())).text(" days\n");
+        t.text("Total Kilometers: ").field((inv, out) -> appendLong(out, inv.getBooking().getTotalKilometers())).text(" km\n");
+
+        t.text(SECTION_BREAK).text("PRICING BREAKDOWN\n").text(SECTION_RULE + "\n");
+        t.text("Base Rental (LKR ")
+                .field((inv, out) -> appendAmount(out, dailyFeeCents(inv), 0))
+                .text(" × ").field((inv, out) -> appendLong(out, inv.getBooking().getRentalDays()))
+                .text(" days)    LKR ").field((inv, out) -> appendAmount(out, inv.getPricing().getBasePriceCents(), AMOUNT_WIDTH))
+                .text("\n");
+        t.when(inv -> inv.getPricing().getExtraKmChargesCents() > 0, extra -> extra
+                .text("Extra KM Charges (").field((inv, out) -> appendLong(out, inv.getPricing().getExtraKm()))
+                .text(" km × LKR ").field((inv, out) -> appendAmount(out, extraKmChargeCents(inv), 0))
+                .text(")    LKR ").field((inv, out) -> appendAmount(out, inv.getPricing().getExtraKmChargesCents(), AMOUNT_WIDTH))
+                .text("\n"));
+        t.when(inv -> inv.getPricing().getDiscountCents() > 0, discount -> discount
+                .text("Discount (10% for 7+ days)           LKR -")
+                .field((inv, out) -> appendAmount(out, inv.getPricing().getDiscountCents(), NEGATIVE_AMOUNT_WIDTH))
+                .text("\n"));
+        t.text("Tax (").field((inv, out) -> appendTaxPercent(out, inv))
+                .text("%)                              LKR ")
+                .field((inv, out) -> appendAmount(out, inv.getPricing().getTaxCents(), AMOUNT_WIDTH)).text("\n");
+        t.text(SUBTOTAL_RULE);
+        t.text("Total Before Deposit                  LKR ")
+                .field((inv, out) -> appendAmount(out, inv.getPricing().getTotalBeforeDepositCents(), AMOUNT_WIDTH)).text("\n");
+        t.text("Deposit Deduction                     LKR -")
+                .field((inv, out) -> appendAmount(out, inv.getPricing().getDepositDeductionCents(), NEGATIVE_AMOUNT_WIDTH)).text("\n");
+        t.text(TOTAL_RULE);
+        t.text("FINAL AMOUNT DUE                      LKR ")
+                .field((inv, out) -> appendAmount(out, inv.getPricing().getFinalAmountCents(), AMOUNT_WIDTH)).text("\n");
+        t.text(TOTAL_RULE);
+
+        t.text(SECTION_BREAK).text("Thank you for choosing EcoRide Car Rental System!\n").text(SECTION_RULE + "\n");
+        return t.build();
+    }
+
+    private static long dailyFeeCents(Invoice invoice) {
+        return PricingEngine.getDailyFeeCents(invoice.getBooking().getVehicle().getCategory());
+    }
+
+    private static long extraKmChargeCents(Invoice invoice) {
+        return PricingEngine.getExtraKmChargeCents(invoice.getBooking().getVehicle().getCategory());
+    }
+
+    // ==================== HAND-ROLLED FORMATTING ====================
+
+    private static void appendTaxPercent(Appendable out, Invoice invoice) throws IOException {
+        int basisPoints = PricingEngine.getTaxRateBasisPoints(invoice.getBooking().getVehicle().getCategory());
+        // Whole percent, rounded half up
+        appendLong(out, (basisPoints + 50) / 100);
+    }
+
+    /**
+     * Writes cents as an amount with two decimals, right aligned to the given width
+     */
+    static void appendAmount(Appendable out, long cents, int width) throws IOException {
+        boolean negative = cents < 0;
+        long abs = Math.abs(cents);
+        long whole = abs / 100;
+        int fraction = (int) (abs % 100);
+        int length = digitCount(whole) + 3 + (negative ? 1 : 0);
+        for (int i = length; i < width; i++) {
+            out.append(' ');
+        }
+        if (negative) {
+            out.append('-');
+        }
+        appendLong(out, whole);
+        out.append('.');
+        out.append((char) ('0' + fraction / 10));
+        out.append((char) ('0' + fraction % 10));
+    }
+
+    static void appendLong(Appendable out, long value) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (int) (value / divisor % 10)));
+        }
+    }
+
+    private static void appendPadded(Appendable out, int value, int width) throws IOException {
+        for (int i = digitCount(value); i < width; i++) {
+            out.append('0');
+        }
+        appendLong(out, value);
+    }
+
+    // yyyy-MM-dd
+    static void appendDate(Appendable out, LocalDate date) throws IOException {
+        appendPadded(out, date.getYear(), 4);
+        out.append('-');
+        appendPadded(out, date.getMonthValue(), 2);
+        out.append('-');
+        appendPadded(out, date.getDayOfMonth(), 2);
+    }
+
+    // yyyy-MM-dd HH:mm:ss
+    static void appendDateTime(Appendable out, LocalDateTime dateTime) throws IOException {
+        appendDate(out, dateTime.toLocalDate());
+        out.append(' ');
+        appendPadded(out, dateTime.getHour(), 2);
+        out.append(':');
+        appendPadded(out, dateTime.getMinute(), 2);
+        out.append(':');
+        appendPadded(out, dateTime.getSecond(), 2);
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    // ==================== TEMPLATE COMPILATION ====================
+
+    /**
+     * One compiled piece of the invoice layout
+     */
+    private interface Segment {
+        void write(Invoice invoice, Appendable out) throws IOException;
+    }
+
+    /**
+     * Collects segments, merging consecutive literal text into a single write
+     */
+    private static final class TemplateBuilder {
+        private final List<Segment> segments = new ArrayList<>();
+        private final StringBuilder pendingText = new StringBuilder();
+
+        TemplateBuilder text(String text) {
+            pendingText.append(text);
+            return this;
+        }
+
+        TemplateBuilder field(Segment field) {
+            flushText();
+            segments.add(field);
+            return this;
+        }
+
+        TemplateBuilder when(Predicate<Invoice> condition, Consumer<TemplateBuilder> section) {
+            TemplateBuilder nested = new TemplateBuilder();
+            section.accept(nested);
+            Segment[] body = nested.build();
+            return field((inv, out) -> {
+                if (condition.test(inv)) {
+                    write(body, inv, out);
+                }
+            });
+        }
+
+        Segment[] build() {
+            flushText();
+            return segments.toArray(new Segment[0]);
+        }
+
+        private void flushText() {
+            if (pendingText.length() > 0) {
+                String literal = pendingText.toString();
+                segments.add((inv, out) -> out.append(literal));
+                pendingText.setLength(0);
+            }
+        }
+    }
+}
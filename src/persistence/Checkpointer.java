@@ -0,0 +1,146 @@
+package persistence;
+
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background checkpointing of the services into a snapshot, so the journal stays short.
+ * A checkpoint rolls the journal to a new segment, writes a snapshot while the
+ * services keep taking bookings, and then deletes the segments the snapshot
+ * supersedes. The segment number acts as the checkpoint epoch: the snapshot is
+ * made consistent on load by replaying the journal from the segment it started
+ * (see Snapshot.write), so nothing has to be paused while it is written.
+ * A checkpoint is due once the current segment reaches maxJournalBytes, or once
+ * interval has passed since the last checkpoint and something has been journaled.
+ */
+public final class Checkpointer implements Closeable {
+    public static final long DEFAULT_MAX_JOURNAL_BYTES = 64L * 1024 * 1024;
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(10);
+    private static final long MAX_POLL_MILLIS = 1000;
+
+    private final Path directory;
+    private final VehicleService vehicleService;
+    private final CustomerService customerService;
+    private final BookingService bookingService;
+    private final InvoiceService invoiceService;
+    private final Journal journal;
+    // Snapshot the state was loaded from, whose history must be loaded before checkpointing
+    private final Snapshot loadedFrom;
+    private final long maxJournalBytes;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private long lastCheckpointNanos;
+    private long checkpointCount;
+    private long lastCheckpointDurationNanos;
+    private IOException lastFailure;
+
+    public Checkpointer(Journal journal, VehicleService vehicleService, CustomerService customerService,
+                        BookingService bookingService, InvoiceService invoiceService, Snapshot loadedFrom) {
+        this(journal, vehicleService, customerService, bookingService, invoiceService, loadedFrom,
+                DEFAULT_MAX_JOURNAL_BYTES, DEFAULT_INTERVAL);
+    }
+
+    public Checkpointer(Journal journal, VehicleService vehicleService, CustomerService customerService,
+                        BookingService bookingService, InvoiceService invoiceService, Snapshot loadedFrom,
+                        long maxJournalBytes, Duration interval) {
+        this.directory = journal.getDirectory();
+        this.journal = journal;
+        this.vehicleService = vehicleService;
+        this.customerService = customerService;
+        this.bookingService = bookingService;
+        this.invoiceService = invoiceService;
+        this.loadedFrom = loadedFrom;
+        this.maxJournalBytes = maxJournalBytes;
+        this.intervalNanos = interval.toNanos();
+        this.lastCheckpointNanos = System.nanoTime();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts checking the triggers in the background
+     */
+    public void start() {
+        long pollMillis = Math.max(1, Math.min(MAX_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(intervalNanos)));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpointIfDue();
+            } catch (IOException e) {
+                // Kept for getLastFailure; the journal still holds everything, so the next attempt can retry
+                synchronized (this) {
+                    lastFailure = e;
+                }
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isCheckpointDue() {
+        long journaled = journal.getSegmentBytes();
+        return journaled >= maxJournalBytes
+                || (journaled > 0 && System.nanoTime() - lastCheckpointNanos >= intervalNanos);
+    }
+
+    public synchronized boolean checkpointIfDue() throws IOException {
+        if (!isCheckpointDue()) {
+            return false;
+        }
+        checkpoint();
+        return true;
+    }
+
+    /**
+     * Writes a snapshot and discards the journal segments it supersedes
+     */
+    public synchronized void checkpoint() throws IOException {
+        long started = System.nanoTime();
+        if (loadedFrom != null) {
+            loadedFrom.awaitHistory();
+        }
+        long segment = journal.roll();
+        Snapshot.write(directory, vehicleService, customerService, bookingService, invoiceService, segment);
+        journal.discardSegmentsBefore(segment);
+
+        lastCheckpointNanos = System.nanoTime();
+        lastCheckpointDurationNanos = lastCheckpointNanos - started;
+        checkpointCount++;
+        lastFailure = null;
+    }
+
+    public synchronized long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    public synchronized long getLastCheckpointDurationNanos() {
+        return lastCheckpointDurationNanos;
+    }
+
+    public synchronized IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stops background checkpointing, waiting for a checkpoint in progress to finish
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package persistence;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import enums.AvailabilityStatus;
+import enums.VehicleCategory;
+import pricing.PricingEngine;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Binary encoding of entity state shared by journal records and snapshots.
+ * Each reader applies the decoded state through the matching restore method of
+ * the owning service, so decoding never notifies service listeners. Enum values
+ * are stored by name, so constants can be reordered without breaking old files.
+ */
+final class EntityCodec {
+    private EntityCodec() {
+    }
+
+    static RecordBuffer writeVehicle(RecordBuffer out, Vehicle vehicle) {
+        return out.putString(vehicle.getCarId())
+                .putString(vehicle.getModel())
+                .putString(vehicle.getCategory().name())
+                .putString(vehicle.getAvailabilityStatus().name());
+    }
+
+    static Vehicle readVehicle(ByteBuffer in, VehicleService vehicleService) {
+        return vehicleService.restoreVehicle(RecordBuffer.getString(in), RecordBuffer.getString(in),
+                VehicleCategory.valueOf(RecordBuffer.getString(in)),
+                AvailabilityStatus.valueOf(RecordBuffer.getString(in)));
+    }
+
+    static RecordBuffer writeCustomer(RecordBuffer out, Customer customer) {
+        return out.putLong(customer.getCustomerNumber())
+                .putString(customer.getNicOrPassport())
+                .putString(customer.getName())
+                .putString(customer.getContactNumber())
+                .putString(customer.getEmail());
+    }
+
+    static Customer readCustomer(ByteBuffer in, CustomerService customerService) {
+        return customerService.restoreCustomer(in.getLong(), RecordBuffer.getString(in),
+                RecordBuffer.getString(in), RecordBuffer.getString(in), RecordBuffer.getString(in));
+    }
+
+    static RecordBuffer writeBooking(RecordBuffer out, Booking booking) {
+        Vehicle vehicle = booking.getVehicle();
+        return out.putLong(booking.getBookingNumber())
+                .putLong(booking.getCustomer().getCustomerNumber())
+                // The vehicle details let a booking outlive the removal of its vehicle
+                .putString(vehicle.getCarId())
+                .putString(vehicle.getModel())
+                .putString(vehicle.getCategory().name())
+                .putDate(booking.getBookingDate())
+                .putDate(booking.getStartDate())
+                .putDate(booking.getEndDate())
+                .putInt(booking.getTotalKilometers())
+                .putLong(PricingEngine.toCents(booking.getDepositAmount()))
+                .putBoolean(booking.isActive());
+    }
+
+    /**
+     * Restores a booking, overwriting a known booking's state or, when overwrite is
+     * false, leaving a known booking as it is
+     */
+    static Booking readBooking(ByteBuffer in, VehicleService vehicleService, CustomerService customerService,
+                               BookingService bookingService, boolean overwrite) throws IOException {
+        long bookingNumber = in.getLong();
+        long customerNumber = in.getLong();
+        Customer customer = customerService.findCustomerByNumber(customerNumber).orElseThrow(() ->
+                new IOException("Booking " + bookingNumber + " refers to unknown customer " + customerNumber));
+        String carId = RecordBuffer.getString(in);
+        String model = RecordBuffer.getString(in);
+        VehicleCategory category = VehicleCategory.valueOf(RecordBuffer.getString(in));
+        Optional<Vehicle> registered = vehicleService.findVehicleById(carId);
+        Vehicle vehicle = registered.isPresent() ? registered.get() : new Vehicle(carId, model, category);
+
+        LocalDate bookingDate = RecordBuffer.getDate(in);
+        LocalDate startDate = RecordBuffer.getDate(in);
+        LocalDate endDate = RecordBuffer.getDate(in);
+        int totalKilometers = in.getInt();
+        double depositAmount = PricingEngine.toAmount(in.getLong());
+        boolean active = RecordBuffer.getBoolean(in);
+        return overwrite
+                ? bookingService.restoreBooking(bookingNumber, customer, vehicle, bookingDate,
+                        startDate, endDate, totalKilometers, depositAmount, active)
+                : bookingService.restoreBookingIfAbsent(bookingNumber, customer, vehicle, bookingDate,
+                        startDate, endDate, totalKilometers, depositAmount, active);
+    }
+
+    static RecordBuffer writeInvoice(RecordBuffer out, Invoice invoice) {
+        return out.putLong(invoice.getInvoiceNumber())
+                .putLong(invoice.getBooking().getBookingNumber())
+                .putDateTime(invoice.getGeneratedDate());
+    }
+
+    static Invoice readInvoice(ByteBuffer in, BookingService bookingService,
+                               InvoiceService invoiceService) throws IOException {
+        long invoiceNumber = in.getLong();
+        long bookingNumber = in.getLong();
+        LocalDateTime generatedDate = RecordBuffer.getDateTime(in);
+        Booking booking = bookingService.findBookingByNumber(bookingNumber).orElseThrow(() ->
+                new IOException("Invoice " + invoiceNumber + " refers to unknown booking " + bookingNumber));
+        return invoiceService.restoreInvoice(invoiceNumber, booking, generatedDate);
+    }
+}
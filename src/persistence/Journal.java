@@ -0,0 +1,346 @@
+package persistence;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.ServiceListener;
+import services.VehicleService;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Durable journal of every service mutation, backed by a WriteAheadLog.
+ * Each record carries the full state of the changed entity, so replaying a
+ * record is an idempotent upsert through the services' restore methods.
+ * Records are appended while the service still holds its lock, which keeps
+ * them in mutation order, and the calling thread waits for its records to be
+ * synced in mutationCommitted, after the lock is released, so concurrent
+ * callers share group commits.
+ *
+ * The journal is a sequence of numbered segment files. roll starts a new segment;
+ * a checkpoint records the segment it started, so every older segment is
+ * superseded by the snapshot and can be deleted.
+ */
+public final class Journal implements ServiceListener, Closeable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    // Single-file journal written before segments were introduced, read as segment 0
+    private static final String LEGACY_FILE_NAME = "journal.wal";
+
+    private final Path directory;
+    // Appends hold the read lock; rolling to a new segment takes the write lock
+    private final ReentrantReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private volatile WriteAheadLog log;
+    private volatile long segment;
+    private final long replayedRecords;
+    private final ThreadLocal<RecordBuffer> buffers = ThreadLocal.withInitial(RecordBuffer::new);
+    // The last record the thread appended and has not waited for yet
+    private final ThreadLocal<PendingCommit> uncommitted = ThreadLocal.withInitial(PendingCommit::new);
+
+    private static final class PendingCommit {
+        private WriteAheadLog log;
+        private long position;
+    }
+
+    private Journal(Path directory, WriteAheadLog log, long segment, long replayedRecords) {
+        this.directory = directory;
+        this.log = log;
+        this.segment = segment;
+        this.replayedRecords = replayedRecords;
+    }
+
+    /**
+     * Replays the journal in the given directory into the services, then records
+     * every further mutation made through them
+     */
+    public static Journal open(Path directory, VehicleService vehicleService, CustomerService customerService,
+                               BookingService bookingService, InvoiceService invoiceService) throws IOException {
+        return open(directory, vehicleService, customerService, bookingService, invoiceService, null);
+    }
+
+    /**
+     * Opens the journal on top of state loaded from a snapshot, replaying only the
+     * segments the snapshot does not cover and deleting the rest. Journal records may
+     * refer to bookings the snapshot is still loading in the background, so a
+     * non-empty journal is only replayed once the snapshot is fully loaded.
+     */
+    public static Journal open(Path directory, VehicleService vehicleService, CustomerService customerService,
+                               BookingService bookingService, InvoiceService invoiceService,
+                               Snapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        long firstSegment = snapshot == null ? 0 : snapshot.getJournalSegment();
+        deleteSegmentsBefore(directory, firstSegment);
+        List<Long> segments = listSegments(directory);
+
+        if (snapshot != null) {
+            for (long number : segments) {
+                if (Files.size(segmentFile(directory, number)) > 0) {
+                    snapshot.awaitHistory();
+                    break;
+                }
+            }
+        }
+
+        Replayer replayer = new Replayer(vehicleService, customerService, bookingService, invoiceService);
+        long replayed = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            replayed += WriteAheadLog.replay(segmentFile(directory, segments.get(i)), replayer::apply);
+        }
+        // The newest segment may end in a torn record and is the one appended to
+        long current = segments.isEmpty() ? Math.max(firstSegment, 1) : segments.get(segments.size() - 1);
+        WriteAheadLog log = WriteAheadLog.open(segmentFile(directory, current), replayer::apply);
+        replayed += log.getReplayedRecords();
+
+        Journal journal = new Journal(directory, log, current, replayed);
+        vehicleService.addListener(journal);
+        customerService.addListener(journal);
+        bookingService.addListener(journal);
+        invoiceService.addListener(journal);
+        return journal;
+    }
+
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    /**
+     * Bytes in the segment currently appended to, i.e. written since the last roll
+     */
+    public long getSegmentBytes() {
+        return log.getAppendedPosition();
+    }
+
+    /**
+     * Starts a new segment and returns its number. Every record appended before
+     * this call is in an older segment and durable once it returns.
+     */
+    public long roll() throws IOException {
+        WriteAheadLog previous;
+        long next;
+        rollLock.writeLock().lock();
+        try {
+            next = segment + 1;
+            WriteAheadLog nextLog = WriteAheadLog.open(segmentFile(directory, next), (type, payload) -> {
+                throw new IOException("New journal segment already has records: " + segmentFile(directory, next));
+            });
+            previous = log;
+            log = nextLog;
+            segment = next;
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+        // Writes out what is still buffered; threads waiting on it are released as usual
+        previous.close();
+        return next;
+    }
+
+    /**
+     * Deletes the segments a checkpoint has made redundant
+     */
+    public void discardSegmentsBefore(long firstKept) throws IOException {
+        deleteSegmentsBefore(directory, Math.min(firstKept, segment));
+    }
+
+    private static void deleteSegmentsBefore(Path directory, long firstKept) throws IOException {
+        for (long number : listSegments(directory)) {
+            if (number < firstKept) {
+                Files.deleteIfExists(segmentFile(directory, number));
+            }
+        }
+    }
+
+    static Path segmentFile(Path directory, long number) {
+        if (number == 0) {
+            return directory.resolve(LEGACY_FILE_NAME);
+        }
+        return directory.resolve(SEGMENT_PREFIX + String.format("%010d", number) + SEGMENT_SUFFIX);
+    }
+
+    // Segment numbers present in the directory, oldest first
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.equals(LEGACY_FILE_NAME)) {
+                    segments.add(0L);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a journal segment
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    // ==================== Recording ====================
+
+    @Override
+    public void vehicleAdded(Vehicle vehicle) {
+        append(RecordType.VEHICLE_ADDED, EntityCodec.writeVehicle(buffers.get().clear(), vehicle));
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle vehicle) {
+        append(RecordType.VEHICLE_UPDATED, EntityCodec.writeVehicle(buffers.get().clear(), vehicle));
+    }
+
+    @Override
+    public void vehicleStatusChanged(Vehicle vehicle) {
+        append(RecordType.VEHICLE_STATUS_CHANGED, EntityCodec.writeVehicle(buffers.get().clear(), vehicle));
+    }
+
+    @Override
+    public void vehicleRemoved(Vehicle vehicle) {
+        append(RecordType.VEHICLE_REMOVED, buffers.get().clear().putString(vehicle.getCarId()));
+    }
+
+    @Override
+    public void customerRegistered(Customer customer) {
+        append(RecordType.CUSTOMER_REGISTERED, EntityCodec.writeCustomer(buffers.get().clear(), customer));
+    }
+
+    @Override
+    public void customerUpdated(Customer customer) {
+        append(RecordType.CUSTOMER_UPDATED, EntityCodec.writeCustomer(buffers.get().clear(), customer));
+    }
+
+    @Override
+    public void bookingCreated(Booking booking) {
+        append(RecordType.BOOKING_CREATED, EntityCodec.writeBooking(buffers.get().clear(), booking));
+    }
+
+    @Override
+    public void bookingUpdated(Booking booking) {
+        append(RecordType.BOOKING_UPDATED, EntityCodec.writeBooking(buffers.get().clear(), booking));
+    }
+
+    @Override
+    public void bookingCancelled(Booking booking) {
+        append(RecordType.BOOKING_CANCELLED, EntityCodec.writeBooking(buffers.get().clear(), booking));
+    }
+
+    @Override
+    public void invoiceGenerated(Invoice invoice) {
+        append(RecordType.INVOICE_GENERATED, EntityCodec.writeInvoice(buffers.get().clear(), invoice));
+    }
+
+    @Override
+    public void mutationCommitted() {
+        PendingCommit pending = uncommitted.get();
+        WriteAheadLog appendedTo = pending.log;
+        if (appendedTo == null) {
+            return;
+        }
+        pending.log = null;
+        try {
+            appendedTo.awaitDurable(pending.position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal write failed", e);
+        }
+    }
+
+    private void append(RecordType type, RecordBuffer record) {
+        PendingCommit pending = uncommitted.get();
+        rollLock.readLock().lock();
+        try {
+            pending.position = log.append(type.getCode(), record.flip());
+            pending.log = log;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal write failed", e);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for everything appended so far to be written, then closes the log
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    // ==================== Replay ====================
+
+    /**
+     * Applies journal records to the services through their restore methods,
+     * which do not notify listeners, so replay never re-journals anything
+     */
+    private static final class Replayer {
+        private final VehicleService vehicleService;
+        private final CustomerService customerService;
+        private final BookingService bookingService;
+        private final InvoiceService invoiceService;
+
+        private Replayer(VehicleService vehicleService, CustomerService customerService,
+                         BookingService bookingService, InvoiceService invoiceService) {
+            this.vehicleService = vehicleService;
+            this.customerService = customerService;
+            this.bookingService = bookingService;
+            this.invoiceService = invoiceService;
+        }
+
+        void apply(byte code, ByteBuffer in) throws IOException {
+            switch (RecordType.fromCode(code)) {
+                case VEHICLE_ADDED:
+                case VEHICLE_UPDATED:
+                case VEHICLE_STATUS_CHANGED:
+                    EntityCodec.readVehicle(in, vehicleService);
+                    break;
+                case VEHICLE_REMOVED:
+                    vehicleService.restoreRemoval(RecordBuffer.getString(in));
+                    break;
+                case CUSTOMER_REGISTERED:
+                case CUSTOMER_UPDATED:
+                    EntityCodec.readCustomer(in, customerService);
+                    break;
+                case BOOKING_CREATED:
+                case BOOKING_UPDATED:
+                case BOOKING_CANCELLED:
+                    Booking booking = EntityCodec.readBooking(in, vehicleService, customerService, bookingService, true);
+                    // As with a live update, invoices already restored for the booking are repriced on next read
+                    invoiceService.markForRepricing(booking.getBookingId());
+                    break;
+                case INVOICE_GENERATED:
+                    EntityCodec.readInvoice(in, bookingService, invoiceService);
+                    break;
+                default:
+                    throw new IOException("Unhandled journal record type: " + code);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Growable buffer for encoding one journal record, with matching static readers.
+ * Strings are written as an int byte length followed by UTF-8 bytes (-1 for null),
+ * dates as epoch days and date-times as epoch day plus nano of day.
+ */
+final class RecordBuffer {
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    RecordBuffer clear() {
+        buffer.clear();
+        return this;
+    }
+
+    /**
+     * The encoded record, ready to be read
+     */
+    ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    RecordBuffer putByte(byte value) {
+        ensure(1);
+        buffer.put(value);
+        return this;
+    }
+
+    RecordBuffer putBoolean(boolean value) {
+        return putByte(value ? (byte) 1 : (byte) 0);
+    }
+
+    RecordBuffer putInt(int value) {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    RecordBuffer putLong(long value) {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+        return this;
+    }
+
+    RecordBuffer putString(String value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    RecordBuffer putDate(LocalDate date) {
+        return putLong(date.toEpochDay());
+    }
+
+    RecordBuffer putDateTime(LocalDateTime dateTime) {
+        return putLong(dateTime.toLocalDate().toEpochDay()).putLong(dateTime.toLocalTime().toNanoOfDay());
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    static boolean getBoolean(ByteBuffer in) {
+        return in.get() != 0;
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static LocalDate getDate(ByteBuffer in) {
+        return LocalDate.ofEpochDay(in.getLong());
+    }
+
+    static LocalDateTime getDateTime(ByteBuffer in) {
+        LocalDate date = LocalDate.ofEpochDay(in.getLong());
+        return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.getLong()));
+    }
+}
@@ -0,0 +1,44 @@
+package persistence;
+
+/**
+ * Kinds of records in the journal. The code is the byte stored in the log, so
+ * existing codes must never be renumbered.
+ */
+public enum RecordType {
+    VEHICLE_ADDED(1),
+    VEHICLE_UPDATED(2),
+    VEHICLE_STATUS_CHANGED(3),
+    VEHICLE_REMOVED(4),
+    CUSTOMER_REGISTERED(5),
+    CUSTOMER_UPDATED(6),
+    BOOKING_CREATED(7),
+    BOOKING_UPDATED(8),
+    BOOKING_CANCELLED(9),
+    INVOICE_GENERATED(10);
+
+    private static final RecordType[] BY_CODE = new RecordType[128];
+
+    static {
+        for (RecordType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    RecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static RecordType fromCode(byte code) {
+        RecordType type = code >= 0 ? BY_CODE[code] : null;
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown journal record type: " + code);
+        }
+        return type;
+    }
+}
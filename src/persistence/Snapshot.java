@@ -0,0 +1,384 @@
+package persistence;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import services.BookingService;
+import services.CustomerService;
+import services.InvoiceService;
+import services.VehicleService;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Versioned binary image of the full service state, loaded through memory mapping.
+ *
+ * Layout: a fixed header (magic, version, creation time, the snapshot date, the
+ * highest customer, booking and invoice numbers, the first journal segment not
+ * covered by the snapshot, and an offset/length/count entry per section), the
+ * sections themselves, and an end marker. Each section is a run of entries
+ * framed as [int length][entity bytes] in the EntityCodec encoding.
+ *
+ * Loading maps each section read-only and restores the fleet, customers and current
+ * bookings (active bookings ending on or after the snapshot date) before returning,
+ * which is all availability queries need. Past bookings and invoices are
+ * materialized from the mapping on a background thread; awaitHistory blocks until
+ * that finishes. ID allocators are advanced from the header up front, so new
+ * bookings and invoices can be created while history is still loading.
+ */
+public final class Snapshot {
+    public static final String FILE_NAME = "state.snapshot";
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x45524E53;
+    private static final int END_MAGIC = 0x454E4421;
+
+    private static final int VEHICLES = 0;
+    private static final int CUSTOMERS = 1;
+    private static final int CURRENT_BOOKINGS = 2;
+    private static final int PAST_BOOKINGS = 3;
+    private static final int INVOICES = 4;
+    private static final int SECTION_COUNT = 5;
+    private static final int SECTION_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 6 * Long.BYTES + SECTION_COUNT * SECTION_ENTRY_BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+
+    private final long createdAtMillis;
+    private final LocalDate snapshotDate;
+    private final long journalSegment;
+    private final int[] counts;
+    private final CompletableFuture<Void> history;
+
+    private Snapshot(long createdAtMillis, LocalDate snapshotDate, long journalSegment, int[] counts,
+                     CompletableFuture<Void> history) {
+        this.createdAtMillis = createdAtMillis;
+        this.snapshotDate = snapshotDate;
+        this.journalSegment = journalSegment;
+        this.counts = counts;
+        this.history = history;
+    }
+
+    public static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(FILE_NAME));
+    }
+
+    // ==================== Writing ====================
+
+    /**
+     * Writes the state of the services to the snapshot file in the directory,
+     * replacing any previous snapshot atomically. The services must not be
+     * modified while the snapshot is written.
+     */
+    public static void write(Path directory, VehicleService vehicleService, CustomerService customerService,
+                             BookingService bookingService, InvoiceService invoiceService) throws IOException {
+        write(directory, vehicleService, customerService, bookingService, invoiceService, 0);
+    }
+
+    /**
+     * Writes a snapshot that is completed by replaying the journal from the given
+     * segment onwards. The services may keep changing while it is written, as long
+     * as every change from then on is journaled in that segment or a later one:
+     * each entity is captured in some state at least as new as when the segment
+     * was started, and replaying the segment's full-state records brings it to its
+     * final state. Invoices are captured before bookings and bookings before
+     * customers, so everything a captured entity refers to is captured too.
+     */
+    public static void write(Path directory, VehicleService vehicleService, CustomerService customerService,
+                             BookingService bookingService, InvoiceService invoiceService,
+                             long journalSegment) throws IOException {
+        LocalDate today = LocalDate.now();
+        List<Invoice> invoices = invoiceService.getAllInvoices();
+        List<Booking> current = new ArrayList<>();
+        List<Booking> past = new ArrayList<>();
+        long maxBookingNumber = 0;
+        for (Booking booking : bookingService.getAllBookings()) {
+            if (booking.isActive() && !booking.getEndDate().isBefore(today)) {
+                current.add(booking);
+            } else {
+                past.add(booking);
+            }
+            maxBookingNumber = Math.max(maxBookingNumber, booking.getBookingNumber());
+        }
+        List<Customer> customers = customerService.getAllCustomers();
+        List<Vehicle> vehicles = vehicleService.getAllVehicles();
+        long maxCustomerNumber = customers.isEmpty() ? 0 : customers.get(customers.size() - 1).getCustomerNumber();
+        long maxInvoiceNumber = invoices.isEmpty() ? 0 : invoices.get(invoices.size() - 1).getInvoiceNumber();
+
+        Files.createDirectories(directory);
+        Path target = directory.resolve(FILE_NAME);
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SectionWriter writer = new SectionWriter(channel);
+            long[][] sections = new long[SECTION_COUNT][];
+            sections[VEHICLES] = writer.begin();
+            for (Vehicle vehicle : vehicles) {
+                writer.entry(EntityCodec.writeVehicle(writer.record(), vehicle));
+            }
+            writer.end(sections[VEHICLES]);
+            sections[CUSTOMERS] = writer.begin();
+            for (Customer customer : customers) {
+                writer.entry(EntityCodec.writeCustomer(writer.record(), customer));
+            }
+            writer.end(sections[CUSTOMERS]);
+            sections[CURRENT_BOOKINGS] = writer.begin();
+            for (Booking booking : current) {
+                writer.entry(EntityCodec.writeBooking(writer.record(), booking));
+            }
+            writer.end(sections[CURRENT_BOOKINGS]);
+            sections[PAST_BOOKINGS] = writer.begin();
+            for (Booking booking : past) {
+                writer.entry(EntityCodec.writeBooking(writer.record(), booking));
+            }
+            writer.end(sections[PAST_BOOKINGS]);
+            sections[INVOICES] = writer.begin();
+            for (Invoice invoice : invoices) {
+                writer.entry(EntityCodec.writeInvoice(writer.record(), invoice));
+            }
+            writer.end(sections[INVOICES]);
+            writer.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putLong(System.currentTimeMillis())
+                    .putLong(today.toEpochDay())
+                    .putLong(maxCustomerNumber)
+                    .putLong(maxBookingNumber)
+                    .putLong(maxInvoiceNumber)
+                    .putLong(journalSegment);
+            for (long[] section : sections) {
+                header.putLong(section[0]).putLong(section[1]).putInt((int) section[2]);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Buffers section entries and writes them out in large chunks after the header
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        private final RecordBuffer record = new RecordBuffer();
+        // File offset of the first byte in out
+        private long flushedPosition = HEADER_BYTES;
+        private long[] section;
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private long position() {
+            return flushedPosition + out.position();
+        }
+
+        // Returns {offset, length, count} for the section being started
+        long[] begin() {
+            section = new long[] {position(), 0, 0};
+            return section;
+        }
+
+        RecordBuffer record() {
+            return record.clear();
+        }
+
+        void entry(RecordBuffer encoded) throws IOException {
+            ByteBuffer bytes = encoded.flip();
+            putInt(bytes.remaining());
+            while (bytes.hasRemaining()) {
+                if (!out.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(out.remaining(), bytes.remaining());
+                int limit = bytes.limit();
+                bytes.limit(bytes.position() + chunk);
+                out.put(bytes);
+                bytes.limit(limit);
+            }
+            section[2]++;
+        }
+
+        void end(long[] finished) {
+            finished[1] = position() - finished[0];
+        }
+
+        void finish() throws IOException {
+            putInt(END_MAGIC);
+            flush();
+        }
+
+        private void putInt(int value) throws IOException {
+            if (out.remaining() < Integer.BYTES) {
+                flush();
+            }
+            out.putInt(value);
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                flushedPosition += channel.write(out, flushedPosition);
+            }
+            out.clear();
+        }
+    }
+
+    // ==================== Loading ====================
+
+    /**
+     * Restores the fleet, customers and current bookings from the snapshot in the
+     * directory and starts materializing past bookings and invoices in the background.
+     * The vehicle service should be created without sample vehicles.
+     */
+    public static Snapshot load(Path directory, VehicleService vehicleService, CustomerService customerService,
+                                BookingService bookingService, InvoiceService invoiceService) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        MappedByteBuffer[] sections = new MappedByteBuffer[SECTION_COUNT];
+        int[] counts = new int[SECTION_COUNT];
+        long createdAtMillis;
+        LocalDate snapshotDate;
+        long journalSegment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Integer.BYTES) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            ByteBuffer end = channel.map(FileChannel.MapMode.READ_ONLY, size - Integer.BYTES, Integer.BYTES);
+            if (end.getInt() != END_MAGIC) {
+                throw new IOException("Snapshot is incomplete: " + file);
+            }
+            createdAtMillis = header.getLong();
+            snapshotDate = LocalDate.ofEpochDay(header.getLong());
+            customerService.advanceCustomerNumbersPast(header.getLong());
+            bookingService.advanceBookingNumbersPast(header.getLong());
+            invoiceService.advanceInvoiceNumbersPast(header.getLong());
+            journalSegment = header.getLong();
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                counts[i] = header.getInt();
+                // Mappings stay valid after the channel is closed
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+        }
+
+        for (ByteBuffer entry = nextEntry(sections[VEHICLES]); entry != null; entry = nextEntry(sections[VEHICLES])) {
+            EntityCodec.readVehicle(entry, vehicleService);
+        }
+        for (ByteBuffer entry = nextEntry(sections[CUSTOMERS]); entry != null; entry = nextEntry(sections[CUSTOMERS])) {
+            EntityCodec.readCustomer(entry, customerService);
+        }
+        ByteBuffer current = sections[CURRENT_BOOKINGS];
+        for (ByteBuffer entry = nextEntry(current); entry != null; entry = nextEntry(current)) {
+            EntityCodec.readBooking(entry, vehicleService, customerService, bookingService, true);
+        }
+
+        CompletableFuture<Void> history = new CompletableFuture<>();
+        Thread loader = new Thread(() -> {
+            try {
+                ByteBuffer past = sections[PAST_BOOKINGS];
+                for (ByteBuffer entry = nextEntry(past); entry != null; entry = nextEntry(past)) {
+                    // Bookings already restored from the journal are newer than the snapshot
+                    EntityCodec.readBooking(entry, vehicleService, customerService, bookingService, false);
+                }
+                ByteBuffer invoices = sections[INVOICES];
+                for (ByteBuffer entry = nextEntry(invoices); entry != null; entry = nextEntry(invoices)) {
+                    EntityCodec.readInvoice(entry, bookingService, invoiceService);
+                }
+                history.complete(null);
+            } catch (Throwable t) {
+                history.completeExceptionally(t);
+            }
+        }, "snapshot-history-loader");
+        loader.setDaemon(true);
+        loader.start();
+
+        return new Snapshot(createdAtMillis, snapshotDate, journalSegment, counts, history);
+    }
+
+    // The next entry of a section as a buffer limited to it, or null at the end
+    private static ByteBuffer nextEntry(ByteBuffer section) {
+        if (!section.hasRemaining()) {
+            return null;
+        }
+        int length = section.getInt();
+        ByteBuffer entry = section.slice();
+        entry.limit(length);
+        section.position(section.position() + length);
+        return entry;
+    }
+
+    /**
+     * Blocks until past bookings and invoices have been restored
+     */
+    public void awaitHistory() throws IOException {
+        try {
+            history.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the snapshot to load");
+        } catch (ExecutionException e) {
+            throw new IOException("Snapshot history failed to load", e.getCause());
+        }
+    }
+
+    public boolean isHistoryLoaded() {
+        return history.isDone();
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public LocalDate getSnapshotDate() {
+        return snapshotDate;
+    }
+
+    /**
+     * The first journal segment whose records are not reflected in the snapshot
+     */
+    public long getJournalSegment() {
+        return journalSegment;
+    }
+
+    public int getVehicleCount() {
+        return counts[VEHICLES];
+    }
+
+    public int getCustomerCount() {
+        return counts[CUSTOMERS];
+    }
+
+    public int getBookingCount() {
+        return counts[CURRENT_BOOKINGS] + counts[PAST_BOOKINGS];
+    }
+
+    public int getInvoiceCount() {
+        return counts[INVOICES];
+    }
+}
@@ -0,0 +1,313 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log file with group commit.
+ * Each record is framed as [int payload length][byte type][payload][int CRC32 of
+ * type and payload]. Appends only copy the record into an in-memory buffer; a
+ * single flusher thread writes whatever has accumulated and forces it to disk
+ * with one fsync, so callers waiting on awaitDurable share syncs instead of
+ * paying one each. Records are identified by their end offset in the file.
+ * On open, the existing file is replayed with streaming FileChannel reads, and a
+ * torn or corrupt tail left by a crash is truncated away.
+ */
+public final class WriteAheadLog implements Closeable {
+    static final int HEADER_BYTES = Integer.BYTES + 1;
+    static final int TRAILER_BYTES = Integer.BYTES;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 16 * 1024;
+    public static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Receives each record read back during replay. The payload buffer is only
+     * valid for the duration of the call.
+     */
+    public interface RecordHandler {
+        void apply(byte type, ByteBuffer payload) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean forceOnCommit;
+    private final long replayedRecords;
+    private final CRC32 checksum = new CRC32();
+    private final Thread flusher;
+
+    // Guarded by this: records appended but not yet handed to the flusher
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long appendedPosition;
+    private long durablePosition;
+    private boolean closed;
+    private IOException failure;
+
+    private WriteAheadLog(Path file, FileChannel channel, long endPosition, long replayedRecords, boolean forceOnCommit) {
+        this.file = file;
+        this.channel = channel;
+        this.forceOnCommit = forceOnCommit;
+        this.replayedRecords = replayedRecords;
+        this.appendedPosition = endPosition;
+        this.durablePosition = endPosition;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher-" + file.getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens (or creates) a log, replaying its records into the handler before
+     * any new record can be appended
+     */
+    public static WriteAheadLog open(Path file, RecordHandler handler) throws IOException {
+        return open(file, handler, true);
+    }
+
+    public static WriteAheadLog open(Path file, RecordHandler handler, boolean forceOnCommit) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long[] replayed = new long[1];
+            long validEnd = replay(channel, handler, replayed);
+            if (validEnd < channel.size()) {
+                // Drop a partially written or corrupt tail so new records follow the last good one
+                channel.truncate(validEnd);
+                channel.force(true);
+            }
+            channel.position(validEnd);
+            return new WriteAheadLog(file, channel, validEnd, replayed[0], forceOnCommit);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every intact record of an existing log without opening it for writing
+     * and returns how many were read
+     */
+    public static long replay(Path file, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] replayed = new long[1];
+            replay(channel, handler, replayed);
+            return replayed[0];
+        }
+    }
+
+    // Returns the offset just past the last intact record
+    private static long replay(FileChannel channel, RecordHandler handler, long[] replayed) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        channel.position(0);
+        boolean endOfFile = false;
+        buffer.flip();
+        while (true) {
+            int needed = buffer.remaining() < HEADER_BYTES ? HEADER_BYTES : recordBytes(buffer);
+            if (needed < 0) {
+                return position;
+            }
+            if (buffer.remaining() < needed) {
+                if (endOfFile) {
+                    return position;
+                }
+                if (needed > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(needed) << 1);
+                    larger.put(buffer);
+                    buffer = larger;
+                } else {
+                    buffer.compact();
+                }
+                endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+                continue;
+            }
+
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            int payloadStart = start + HEADER_BYTES;
+            int end = payloadStart + length;
+
+            crc.reset();
+            ByteBuffer checked = buffer.duplicate();
+            checked.position(start + Integer.BYTES).limit(end);
+            crc.update(checked);
+            if ((int) crc.getValue() != buffer.getInt(end)) {
+                return position;
+            }
+
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(payloadStart).limit(end);
+            handler.apply(buffer.get(start + Integer.BYTES), payload.slice());
+            replayed[0]++;
+
+            int size = HEADER_BYTES + length + TRAILER_BYTES;
+            buffer.position(start + size);
+            position += size;
+        }
+    }
+
+    // Full size of the record starting at the buffer position, or -1 if its length is corrupt
+    private static int recordBytes(ByteBuffer buffer) {
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+            return -1;
+        }
+        return HEADER_BYTES + length + TRAILER_BYTES;
+    }
+
+    /**
+     * Buffers one record and returns its end offset. The record is not durable
+     * until awaitDurable returns for that offset.
+     */
+    public synchronized long append(byte type, ByteBuffer payload) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log is closed: " + file);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        int length = payload.remaining();
+        if (length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Record of " + length + " bytes exceeds the " + MAX_PAYLOAD_BYTES + " byte limit");
+        }
+        int size = HEADER_BYTES + length + TRAILER_BYTES;
+        if (pending.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+
+        int start = pending.position();
+        pending.putInt(length);
+        pending.put(type);
+        pending.put(payload);
+        checksum.reset();
+        checksum.update(pending.array(), pending.arrayOffset() + start + Integer.BYTES, 1 + length);
+        pending.putInt((int) checksum.getValue());
+
+        appendedPosition += size;
+        notifyAll();
+        return appendedPosition;
+    }
+
+    /**
+     * Blocks until every record up to the given offset has been written and, if
+     * forced commits are enabled, synced to disk
+     */
+    public synchronized void awaitDurable(long position) throws IOException {
+        while (durablePosition < position) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed && !flusher.isAlive()) {
+                throw new IOException("Write-ahead log closed before the record was written: " + file);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the write-ahead log");
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only close stops the flusher
+                    }
+                }
+                if (pending.position() == 0) {
+                    notifyAll();
+                    return;
+                }
+                // Swap buffers so appends continue while this batch is written
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchEnd = appendedPosition;
+            }
+
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                if (forceOnCommit) {
+                    channel.force(false);
+                }
+                batch.clear();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                durablePosition = batchEnd;
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized long getDurablePosition() {
+        return durablePosition;
+    }
+
+    public synchronized long getAppendedPosition() {
+        return appendedPosition;
+    }
+
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes out everything appended so far, then closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package pricing;
+
+import enums.VehicleCategory;
+
+/**
+ * Reusable result holder for PricingEngine.
+ * All money values are in cents (LKR x 100) so amounts are exact; the same
+ * instance can be passed to PricingEngine.quote repeatedly without allocating.
+ */
+public final class PriceQuote {
+    // Line item flags returned by PricingEngine.reprice
+    public static final int BASE_PRICE = 1;
+    public static final int EXTRA_KM_CHARGES = 1 << 1;
+    public static final int DISCOUNT = 1 << 2;
+    public static final int TAX = 1 << 3;
+    public static final int DEPOSIT = 1 << 4;
+
+    // Inputs the quote was priced from
+    VehicleCategory category;
+    int totalKilometers;
+    int rentalDays;
+    int freeKm;
+    int extraKm;
+    long basePriceCents;
+    long extraKmChargesCents;
+    long discountCents;
+    long subtotalCents;
+    long taxCents;
+    long totalBeforeDepositCents;
+    long depositDeductionCents;
+    long finalAmountCents;
+
+    public VehicleCategory getCategory() {
+        return category;
+    }
+
+    public int getTotalKilometers() {
+        return totalKilometers;
+    }
+
+    public int getRentalDays() {
+        return rentalDays;
+    }
+
+    public int getFreeKm() {
+        return freeKm;
+    }
+
+    public int getExtraKm() {
+        return extraKm;
+    }
+
+    public long getBasePriceCents() {
+        return basePriceCents;
+    }
+
+    public long getExtraKmChargesCents() {
+        return extraKmChargesCents;
+    }
+
+    public long getDiscountCents() {
+        return discountCents;
+    }
+
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+
+    public long getTaxCents() {
+        return taxCents;
+    }
+
+    public long getTotalBeforeDepositCents() {
+        return totalBeforeDepositCents;
+    }
+
+    public long getDepositDeductionCents() {
+        return depositDeductionCents;
+    }
+
+    public long getFinalAmountCents() {
+        return finalAmountCents;
+    }
+
+    /**
+     * Independent copy of every input and line item, e.g. to reprice without
+     * disturbing readers of this quote
+     */
+    public PriceQuote copy() {
+        PriceQuote copy = new PriceQuote();
+        copy.category = category;
+        copy.totalKilometers = totalKilometers;
+        copy.rentalDays = rentalDays;
+        copy.freeKm = freeKm;
+        copy.extraKm = extraKm;
+        copy.basePriceCents = basePriceCents;
+        copy.extraKmChargesCents = extraKmChargesCents;
+        copy.discountCents = discountCents;
+        copy.subtotalCents = subtotalCents;
+        copy.taxCents = taxCents;
+        copy.totalBeforeDepositCents = totalBeforeDepositCents;
+        copy.depositDeductionCents = depositDeductionCents;
+        copy.finalAmountCents = finalAmountCents;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PriceQuote[days=%d, base=%d, extraKm=%d, discount=%d, tax=%d, final=%d]",
+                rentalDays, basePriceCents, extraKmChargesCents, discountCents, taxCents, finalAmountCents);
+    }
+}
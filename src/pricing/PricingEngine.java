@@ -0,0 +1,168 @@
+package pricing;
+
+import enums.VehicleCategory;
+
+/**
+ * Fixed-point pricing engine for rentals.
+ * Money is computed in long cents using per-category lookup tables indexed by
+ * VehicleCategory ordinal, so results carry no floating point drift. Percentages
+ * are held in basis points (1% = 100) and rounded half up to the nearest cent.
+ */
+public final class PricingEngine {
+    public static final int LONG_RENTAL_DAYS = 7;
+    public static final int LONG_RENTAL_DISCOUNT_BASIS_POINTS = 1000;
+    private static final long BASIS_POINTS = 10_000;
+
+    private static final long[] DAILY_FEE_CENTS;
+    private static final int[] FREE_KM_PER_DAY;
+    private static final long[] EXTRA_KM_CHARGE_CENTS;
+    private static final int[] TAX_RATE_BASIS_POINTS;
+
+    static {
+        VehicleCategory[] categories = VehicleCategory.values();
+        DAILY_FEE_CENTS = new long[categories.length];
+        FREE_KM_PER_DAY = new int[categories.length];
+        EXTRA_KM_CHARGE_CENTS = new long[categories.length];
+        TAX_RATE_BASIS_POINTS = new int[categories.length];
+        for (VehicleCategory category : categories) {
+            int i = category.ordinal();
+            DAILY_FEE_CENTS[i] = toCents(category.getDailyRentalFee());
+            FREE_KM_PER_DAY[i] = category.getFreeKmPerDay();
+            EXTRA_KM_CHARGE_CENTS[i] = toCents(category.getExtraKmCharge());
+            TAX_RATE_BASIS_POINTS[i] = (int) Math.round(category.getTaxRate() * BASIS_POINTS);
+        }
+    }
+
+    private PricingEngine() {
+    }
+
+    /**
+     * Prices a rental into the given holder and returns it
+     */
+    public static PriceQuote quote(VehicleCategory category, int rentalDays, int totalKilometers,
+                                   long depositCents, PriceQuote out) {
+        int c = category.ordinal();
+        out.category = category;
+        out.totalKilometers = totalKilometers;
+        out.rentalDays = rentalDays;
+
+        // Base price
+        out.basePriceCents = DAILY_FEE_CENTS[c] * rentalDays;
+
+        // Extra km charges
+        out.freeKm = FREE_KM_PER_DAY[c] * rentalDays;
+        out.extraKm = Math.max(0, totalKilometers - out.freeKm);
+        out.extraKmChargesCents = out.extraKm * EXTRA_KM_CHARGE_CENTS[c];
+
+        // Discount for long rentals
+        out.discountCents = rentalDays >= LONG_RENTAL_DAYS
+                ? percentOf(out.basePriceCents, LONG_RENTAL_DISCOUNT_BASIS_POINTS) : 0;
+
+        // Subtotal, tax and totals
+        out.subtotalCents = out.basePriceCents - out.discountCents + out.extraKmChargesCents;
+        out.taxCents = percentOf(out.subtotalCents, TAX_RATE_BASIS_POINTS[c]);
+        out.totalBeforeDepositCents = out.subtotalCents + out.taxCents;
+        out.depositDeductionCents = depositCents;
+        out.finalAmountCents = out.totalBeforeDepositCents - depositCents;
+        return out;
+    }
+
+    /**
+     * Brings an existing quote up to date with new rental inputs, recomputing only
+     * the line items that depend on what changed: the rental days drive the base
+     * price, free km and discount, the kilometers drive the extra km charges, and
+     * tax and totals follow from the subtotal. Returns the PriceQuote line item
+     * flags that changed, or 0 when the quote was already current.
+     */
+    public static int reprice(VehicleCategory category, int rentalDays, int totalKilometers,
+                              long depositCents, PriceQuote quote) {
+        if (category != quote.category) {
+            // Every rate differs, so nothing from the old quote can be reused
+            PriceQuote previous = quote.copy();
+            quote(category, rentalDays, totalKilometers, depositCents, quote);
+            return changedItems(previous, quote);
+        }
+        int c = category.ordinal();
+        int changed = 0;
+
+        if (rentalDays != quote.rentalDays) {
+            quote.rentalDays = rentalDays;
+            long basePrice = DAILY_FEE_CENTS[c] * rentalDays;
+            if (basePrice != quote.basePriceCents) {
+                quote.basePriceCents = basePrice;
+                changed |= PriceQuote.BASE_PRICE;
+            }
+            quote.freeKm = FREE_KM_PER_DAY[c] * rentalDays;
+            long discount = rentalDays >= LONG_RENTAL_DAYS
+                    ? percentOf(basePrice, LONG_RENTAL_DISCOUNT_BASIS_POINTS) : 0;
+            if (discount != quote.discountCents) {
+                quote.discountCents = discount;
+                changed |= PriceQuote.DISCOUNT;
+            }
+        }
+
+        int extraKm = Math.max(0, totalKilometers - quote.freeKm);
+        quote.totalKilometers = totalKilometers;
+        if (extraKm != quote.extraKm) {
+            quote.extraKm = extraKm;
+            quote.extraKmChargesCents = extraKm * EXTRA_KM_CHARGE_CENTS[c];
+            changed |= PriceQuote.EXTRA_KM_CHARGES;
+        }
+
+        if ((changed & (PriceQuote.BASE_PRICE | PriceQuote.DISCOUNT | PriceQuote.EXTRA_KM_CHARGES)) != 0) {
+            quote.subtotalCents = quote.basePriceCents - quote.discountCents + quote.extraKmChargesCents;
+            long tax = percentOf(quote.subtotalCents, TAX_RATE_BASIS_POINTS[c]);
+            if (tax != quote.taxCents) {
+                quote.taxCents = tax;
+                changed |= PriceQuote.TAX;
+            }
+            quote.totalBeforeDepositCents = quote.subtotalCents + quote.taxCents;
+        }
+
+        if (depositCents != quote.depositDeductionCents) {
+            quote.depositDeductionCents = depositCents;
+            changed |= PriceQuote.DEPOSIT;
+        }
+        if (changed != 0) {
+            quote.finalAmountCents = quote.totalBeforeDepositCents - quote.depositDeductionCents;
+        }
+        return changed;
+    }
+
+    private static int changedItems(PriceQuote before, PriceQuote after) {
+        int changed = 0;
+        if (before.basePriceCents != after.basePriceCents) changed |= PriceQuote.BASE_PRICE;
+        if (before.extraKmChargesCents != after.extraKmChargesCents) changed |= PriceQuote.EXTRA_KM_CHARGES;
+        if (before.discountCents != after.discountCents) changed |= PriceQuote.DISCOUNT;
+        if (before.taxCents != after.taxCents) changed |= PriceQuote.TAX;
+        if (before.depositDeductionCents != after.depositDeductionCents) changed |= PriceQuote.DEPOSIT;
+        return changed;
+    }
+
+    public static long getDailyFeeCents(VehicleCategory category) {
+        return DAILY_FEE_CENTS[category.ordinal()];
+    }
+
+    public static long getExtraKmChargeCents(VehicleCategory category) {
+        return EXTRA_KM_CHARGE_CENTS[category.ordinal()];
+    }
+
+    public static int getTaxRateBasisPoints(VehicleCategory category) {
+        return TAX_RATE_BASIS_POINTS[category.ordinal()];
+    }
+
+    /**
+     * amount x basisPoints / 10000, rounded half up
+     */
+    static long percentOf(long amountCents, long basisPoints) {
+        return Math.floorDiv(amountCents * basisPoints + BASIS_POINTS / 2, BASIS_POINTS);
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+}
@@ -0,0 +1,47 @@
+package services;
+
+import models.Invoice;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch invoice run: the invoices created, how many bookings were
+ * skipped (cancelled, duplicated in the batch or already invoiced) and throughput
+ */
+public class BatchInvoiceResult {
+    private final List<Invoice> invoices;
+    private final int skippedCount;
+    private final long elapsedNanos;
+
+    public BatchInvoiceResult(List<Invoice> invoices, int skippedCount, long elapsedNanos) {
+        this.invoices = Collections.unmodifiableList(invoices);
+        this.skippedCount = skippedCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Invoice> getInvoices() {
+        return invoices;
+    }
+
+    public int getGeneratedCount() {
+        return invoices.size();
+    }
+
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getInvoicesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : invoices.size() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Generated: %d | Skipped: %d | Time: %.2f ms | Throughput: %.0f invoices/s",
+                getGeneratedCount(), skippedCount, elapsedNanos / 1_000_000.0, getInvoicesPerSecond());
+    }
+}
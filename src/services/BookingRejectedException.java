@@ -0,0 +1,31 @@
+package services;
+
+import enums.RejectionCode;
+import java.util.Locale;
+
+/**
+ * A booking request rejected by the business rules. Rejections are ordinary
+ * outcomes under load, so no stack trace is captured and the message is only
+ * formatted from the code and its details when it is asked for. Instances
+ * without per-request details are immutable and can be shared.
+ */
+public class BookingRejectedException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final RejectionCode code;
+    private final Object[] details;
+
+    public BookingRejectedException(RejectionCode code, Object... details) {
+        super(null, null, false, false);
+        this.code = code;
+        this.details = details;
+    }
+
+    public RejectionCode getCode() {
+        return code;
+    }
+
+    @Override
+    public String getMessage() {
+        return String.format(Locale.ROOT, code.getMessageFormat(), details);
+    }
+}
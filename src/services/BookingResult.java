@@ -0,0 +1,62 @@
+package services;
+
+import models.Booking;
+import enums.RejectionCode;
+
+/**
+ * Outcome of a booking request: the booking created, updated or cancelled, or
+ * the rejection that explains why nothing changed. Callers branch on
+ * isAccepted or getCode; orElseThrow turns a rejection into the exception.
+ */
+public final class BookingResult {
+    private final Booking booking;
+    private final BookingRejectedException rejection;
+
+    private BookingResult(Booking booking, BookingRejectedException rejection) {
+        this.booking = booking;
+        this.rejection = rejection;
+    }
+
+    public static BookingResult accepted(Booking booking) {
+        return new BookingResult(booking, null);
+    }
+
+    public static BookingResult rejected(RejectionCode code, Object... details) {
+        return new BookingResult(null, new BookingRejectedException(code, details));
+    }
+
+    public boolean isAccepted() {
+        return rejection == null;
+    }
+
+    /**
+     * The booking the request applied to, or null when it was rejected
+     */
+    public Booking getBooking() {
+        return booking;
+    }
+
+    public BookingRejectedException getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Why the request was rejected, or null when it was accepted
+     */
+    public RejectionCode getCode() {
+        return rejection == null ? null : rejection.getCode();
+    }
+
+    public Booking orElseThrow() throws BookingRejectedException {
+        if (rejection != null) {
+            throw rejection;
+        }
+        return booking;
+    }
+
+    @Override
+    public String toString() {
+        return rejection == null ? "Accepted: " + booking.getBookingId()
+                : rejection.getCode() + ": " + rejection.getMessage();
+    }
+}
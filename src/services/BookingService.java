@@ -4,149 +4,589 @@ import models.Booking;
 import models.Customer;
 import models.Vehicle;
 import enums.AvailabilityStatus;
+import enums.RejectionCode;
+import services.repository.InMemoryRepository;
+import services.repository.Page;
+import services.repository.Repository;
+import metrics.BookingEvent;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.ServiceMetrics;
+import utils.IdAllocator;
+import utils.NGramIndex;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Service class for managing booking operations
  */
 public class BookingService {
-    private List<Booking> bookings;
-    private int bookingCounter;
+    private static final int LOCK_STRIPES = 64;
+
+    // Rejections without per-request details, allocated once and shared
+    private static final BookingResult INSUFFICIENT_NOTICE =
+            BookingResult.rejected(RejectionCode.INSUFFICIENT_NOTICE, Booking.MIN_ADVANCE_BOOKING_DAYS);
+    private static final BookingResult INVALID_DATE_RANGE = BookingResult.rejected(RejectionCode.INVALID_DATE_RANGE);
+    private static final BookingResult VEHICLE_NOT_AVAILABLE =
+            BookingResult.rejected(RejectionCode.VEHICLE_NOT_AVAILABLE);
+    private static final BookingResult ALREADY_CANCELLED = BookingResult.rejected(RejectionCode.ALREADY_CANCELLED);
+    private static final BookingResult CANCELLATION_DEADLINE_PASSED = BookingResult.rejected(
+            RejectionCode.CANCELLATION_DEADLINE_PASSED, Booking.CANCELLATION_DEADLINE_DAYS);
+    private static final BookingResult UPDATE_DEADLINE_PASSED = BookingResult.rejected(
+            RejectionCode.UPDATE_DEADLINE_PASSED, Booking.CANCELLATION_DEADLINE_DAYS);
+
+    // Storage of record keyed by bookingId, listed by booking number
+    private Repository<Booking> bookings;
+    // Secondary indexes ordered by booking number so results keep creation order
+    private Map<String, NavigableMap<Long, Booking>> bookingsByCustomer;
+    private Map<String, NavigableMap<Long, Booking>> bookingsByVehicle;
+    private NavigableMap<Long, Booking> activeBookings;
+    private IdAllocator bookingIds;
     private VehicleService vehicleService;
+    // Optional: resolves name searches through the customer name index
+    private CustomerService customerService;
+    // Per-vehicle reservation calendars keyed by carId
+    private Map<String, ReservationCalendar> calendars;
+    // A calendar is only changed while holding the write lock of the stripe for its
+    // carId, so bookings for the same vehicle serialize and other vehicles run in
+    // parallel; availability checks read it optimistically without blocking writers
+    private LockStripes vehicleLocks;
+    private List<ServiceListener> listeners;
+
+    // Calls, failures and latencies of the public operations
+    private final ServiceMetrics metrics = new ServiceMetrics("bookings");
+    private final OperationMetrics createMetrics = metrics.operation("createBooking");
+    private final OperationMetrics updateMetrics = metrics.operation("updateBooking");
+    private final OperationMetrics cancelMetrics = metrics.operation("cancelBooking");
+    private final OperationMetrics freeBetweenMetrics = metrics.operation("getVehiclesFreeBetween");
+    private final OperationMetrics isFreeMetrics = metrics.operation("isVehicleFreeBetween");
+    private final OperationMetrics findByIdMetrics = metrics.operation("findBookingById");
+    private final OperationMetrics findByNumberMetrics = metrics.operation("findBookingByNumber");
+    private final OperationMetrics findByCustomerNameMetrics = metrics.operation("findBookingsByCustomerName");
+    private final OperationMetrics getByCustomerMetrics = metrics.operation("getBookingsByCustomer");
+    private final OperationMetrics getByVehicleMetrics = metrics.operation("getBookingsByVehicle");
+    private final OperationMetrics getAllMetrics = metrics.operation("getAllBookings");
+    private final OperationMetrics getPageMetrics = metrics.operation("getBookingPage");
+    private final OperationMetrics getActiveMetrics = metrics.operation("getActiveBookings");
+    private final OperationMetrics getCompletedMetrics = metrics.operation("getCompletedBookings");
 
     public BookingService(VehicleService vehicleService) {
-        this.bookings = new ArrayList<>();
-        this.bookingCounter = 1;
+        this(vehicleService, null);
+    }
+
+    public BookingService(VehicleService vehicleService, CustomerService customerService) {
+        this(vehicleService, customerService,
+                new InMemoryRepository<>(Booking::getBookingId, Booking::getBookingNumber));
+    }
+
+    /**
+     * Creates the service over the given storage, rebuilding the indexes and the
+     * reservation calendars from the bookings already stored there
+     */
+    public BookingService(VehicleService vehicleService, CustomerService customerService,
+                          Repository<Booking> bookings) {
+        this.bookings = bookings;
+        this.bookingsByCustomer = new ConcurrentHashMap<>();
+        this.bookingsByVehicle = new ConcurrentHashMap<>();
+        this.activeBookings = new ConcurrentSkipListMap<>();
+        this.bookingIds = new IdAllocator(Booking.ID_PREFIX);
         this.vehicleService = vehicleService;
+        this.customerService = customerService;
+        this.calendars = new ConcurrentHashMap<>();
+        this.vehicleLocks = new LockStripes(LOCK_STRIPES);
+        this.listeners = new CopyOnWriteArrayList<>();
+        for (Booking booking : bookings.findAll()) {
+            bookingIds.advancePast(booking.getBookingNumber());
+            indexSecondary(booking);
+            if (booking.isActive()) {
+                calendarFor(booking.getVehicle().getCarId()).reserve(booking);
+            }
+        }
+    }
+
+    public void addListener(ServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public VehicleService getVehicleService() {
+        return vehicleService;
+    }
+
+    /**
+     * Exposes the operation metrics and a gauge of the active bookings
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(metrics);
+        // Counted by walking the skip list, which is fine at scrape intervals
+        registry.gauge("bookings_active", "Bookings not cancelled", activeBookings::size);
     }
 
     public Booking createBooking(Customer customer, String carId, LocalDate startDate, 
-                                LocalDate endDate, int totalKilometers) throws Exception {
-        // Validate vehicle exists and is available
+                                LocalDate endDate, int totalKilometers) throws BookingRejectedException {
+        return tryCreateBooking(customer, carId, startDate, endDate, totalKilometers).orElseThrow();
+    }
+
+    /**
+     * Like createBooking, but reports a rejection in the result instead of throwing,
+     * so callers that expect rejections can branch on its code
+     */
+    public BookingResult tryCreateBooking(Customer customer, String carId, LocalDate startDate,
+                                          LocalDate endDate, int totalKilometers) {
+        BookingEvent event = new BookingEvent.Created();
+        event.begin();
+        try {
+            BookingResult result = createMetrics.time(() ->
+                    create(customer, carId, startDate, endDate, totalKilometers), BookingResult::isAccepted);
+            complete(event, result.isAccepted() ? result.getBooking().getBookingId() : null, carId, result);
+            return result;
+        } catch (RuntimeException e) {
+            complete(event, null, carId, e);
+            throw e;
+        }
+    }
+
+    private BookingResult create(Customer customer, String carId, LocalDate startDate,
+                                 LocalDate endDate, int totalKilometers) {
+        // Validate vehicle exists
         Optional<Vehicle> vehicleOpt = vehicleService.findVehicleById(carId);
         if (!vehicleOpt.isPresent()) {
-            throw new Exception("Vehicle not found with ID: " + carId);
+            return BookingResult.rejected(RejectionCode.VEHICLE_NOT_FOUND, carId);
         }
-
         Vehicle vehicle = vehicleOpt.get();
-        if (vehicle.getAvailabilityStatus() != AvailabilityStatus.AVAILABLE) {
-            throw new Exception("Vehicle is not available for booking.");
-        }
 
         // Validate advance booking requirement (at least 3 days)
         long daysUntilStart = ChronoUnit.DAYS.between(LocalDate.now(), startDate);
         if (daysUntilStart < Booking.MIN_ADVANCE_BOOKING_DAYS) {
-            throw new Exception("Booking must be made at least " + 
-                    Booking.MIN_ADVANCE_BOOKING_DAYS + " days in advance.");
+            return INSUFFICIENT_NOTICE;
         }
 
         // Validate date range
         if (endDate.isBefore(startDate) || endDate.equals(startDate)) {
-            throw new Exception("End date must be after start date.");
+            return INVALID_DATE_RANGE;
+        }
+
+        Booking booking;
+        StampedLock lock = vehicleLocks.lockFor(carId);
+        long stamp = lock.writeLock();
+        try {
+            // Validate the vehicle is not held (reserved or under maintenance)
+            if (vehicle.getAvailabilityStatus() != AvailabilityStatus.AVAILABLE) {
+                return VEHICLE_NOT_AVAILABLE;
+            }
+
+            // Validate the vehicle is free for the requested dates
+            ReservationCalendar calendar = calendarFor(carId);
+            Booking conflict = calendar.findConflict(startDate, endDate);
+            if (conflict != null) {
+                return alreadyReserved(conflict);
+            }
+
+            // Create booking
+            booking = new Booking(bookingIds.next(), customer, vehicle, startDate, endDate, totalKilometers);
+            calendar.reserve(booking);
+            indexBooking(booking);
+            for (ServiceListener listener : listeners) {
+                listener.bookingCreated(booking);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        fireCommitted();
+        return BookingResult.accepted(booking);
+    }
+
+    private static BookingResult alreadyReserved(Booking conflict) {
+        return BookingResult.rejected(RejectionCode.VEHICLE_ALREADY_RESERVED,
+                conflict.getStartDate(), conflict.getEndDate());
+    }
+
+    private void indexBooking(Booking booking) {
+        bookings.save(booking);
+        indexSecondary(booking);
+    }
+
+    private void indexSecondary(Booking booking) {
+        Long number = booking.getBookingNumber();
+        bookingsByCustomer.computeIfAbsent(booking.getCustomer().getCustomerId(),
+                id -> new ConcurrentSkipListMap<>()).put(number, booking);
+        bookingsByVehicle.computeIfAbsent(booking.getVehicle().getCarId(),
+                id -> new ConcurrentSkipListMap<>()).put(number, booking);
+        if (booking.isActive()) {
+            activeBookings.put(number, booking);
+        }
+    }
+
+    /**
+     * Applies a persisted booking state: indexes the booking under its original number
+     * if it is unknown, otherwise overwrites its dates, kilometers and status, keeping
+     * the vehicle's calendar in step. Listeners are not notified.
+     */
+    public Booking restoreBooking(long bookingNumber, Customer customer, Vehicle vehicle, LocalDate bookingDate,
+                                  LocalDate startDate, LocalDate endDate, int totalKilometers,
+                                  double depositAmount, boolean active) {
+        return restoreBooking(bookingNumber, customer, vehicle, bookingDate, startDate, endDate,
+                totalKilometers, depositAmount, active, true);
+    }
+
+    /**
+     * Like restoreBooking, but keeps the current state of a booking that is already
+     * known, e.g. one restored from a newer journal record
+     */
+    public Booking restoreBookingIfAbsent(long bookingNumber, Customer customer, Vehicle vehicle,
+                                          LocalDate bookingDate, LocalDate startDate, LocalDate endDate,
+                                          int totalKilometers, double depositAmount, boolean active) {
+        return restoreBooking(bookingNumber, customer, vehicle, bookingDate, startDate, endDate,
+                totalKilometers, depositAmount, active, false);
+    }
+
+    private Booking restoreBooking(long bookingNumber, Customer customer, Vehicle vehicle, LocalDate bookingDate,
+                                   LocalDate startDate, LocalDate endDate, int totalKilometers,
+                                   double depositAmount, boolean active, boolean overwrite) {
+        bookingIds.advancePast(bookingNumber);
+        String carId = vehicle.getCarId();
+        StampedLock lock = vehicleLocks.lockFor(carId);
+        long stamp = lock.writeLock();
+        try {
+            ReservationCalendar calendar = calendarFor(carId);
+            Booking booking = bookings.findById(IdAllocator.render(Booking.ID_PREFIX, bookingNumber)).orElse(null);
+            if (booking != null && !overwrite) {
+                return booking;
+            }
+            if (booking == null) {
+                booking = new Booking(bookingNumber, customer, vehicle, startDate, endDate, totalKilometers);
+                booking.setActive(active);
+                indexSecondary(booking);
+            } else {
+                calendar.release(booking);
+                booking.setStartDate(startDate);
+                booking.setEndDate(endDate);
+                booking.setTotalKilometers(totalKilometers);
+                booking.setActive(active);
+                if (!active) {
+                    activeBookings.remove(bookingNumber);
+                }
+            }
+            booking.setBookingDate(bookingDate);
+            booking.setDepositAmount(depositAmount);
+            bookings.save(booking);
+            if (active) {
+                calendar.reserve(booking);
+            }
+            return booking;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Ensures booking numbers up to the given one, e.g. those of bookings still being
+     * restored, are never handed out to new bookings
+     */
+    public void advanceBookingNumbersPast(long usedNumber) {
+        bookingIds.advancePast(usedNumber);
+    }
+
+    private void fireCommitted() {
+        for (ServiceListener listener : listeners) {
+            listener.mutationCommitted();
         }
+    }
+
+    /**
+     * Ends a lifecycle event and commits it if a Flight Recorder recording wants it.
+     * The booking, vehicle and rejection message are only looked up in that case.
+     */
+    private void complete(BookingEvent event, String bookingId, String carId, BookingResult result) {
+        BookingRejectedException rejection = result.getRejection();
+        complete(event, bookingId, carId, rejection == null ? null : rejection.getCode(), rejection);
+    }
+
+    private void complete(BookingEvent event, String bookingId, String carId, RuntimeException error) {
+        complete(event, bookingId, carId, null, error);
+    }
 
-        // Create booking
-        String bookingId = generateBookingId();
-        Booking booking = new Booking(bookingId, customer, vehicle, startDate, endDate, totalKilometers);
-        bookings.add(booking);
+    private void complete(BookingEvent event, String bookingId, String carId,
+                          RejectionCode rejection, Exception failure) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        Booking booking = bookingId == null ? null : bookings.findById(bookingId).orElse(null);
+        Vehicle vehicle = booking != null ? booking.getVehicle()
+                : carId == null ? null : vehicleService.findVehicleById(carId).orElse(null);
+        event.complete(bookingId, carId, vehicle, rejection, failure == null ? null : failure.getMessage());
+    }
 
-        // Update vehicle status
-        vehicleService.updateAvailabilityStatus(carId, AvailabilityStatus.RESERVED);
+    private ReservationCalendar calendarFor(String carId) {
+        return calendars.computeIfAbsent(carId, id -> new ReservationCalendar());
+    }
 
-        return booking;
+    /**
+     * Vehicles that can be booked for the whole period [startDate, endDate).
+     * Only vehicles with AVAILABLE status are considered and each one costs a
+     * single O(log n) calendar lookup, so existing bookings are never scanned.
+     */
+    public List<Vehicle> getVehiclesFreeBetween(LocalDate startDate, LocalDate endDate) {
+        return freeBetweenMetrics.time(() -> {
+            List<Vehicle> free = new ArrayList<>();
+            for (Vehicle vehicle : vehicleService.getAvailableVehicles()) {
+                if (isFree(vehicle.getCarId(), startDate, endDate)) {
+                    free.add(vehicle);
+                }
+            }
+            return free;
+        });
     }
 
-    private String generateBookingId() {
-        return String.format("B%04d", bookingCounter++);
+    public boolean isVehicleFreeBetween(String carId, LocalDate startDate, LocalDate endDate) {
+        return isFreeMetrics.time(() -> isFree(carId, startDate, endDate));
+    }
+
+    private boolean isFree(String carId, LocalDate startDate, LocalDate endDate) {
+        ReservationCalendar calendar = calendars.get(carId);
+        if (calendar == null) {
+            return true;
+        }
+        return LockStripes.readOptimistically(vehicleLocks.lockFor(carId),
+                () -> calendar.isFree(startDate, endDate));
     }
 
     public Optional<Booking> findBookingById(String bookingId) {
-        return bookings.stream()
-                .filter(b -> b.getBookingId().equals(bookingId))
-                .findFirst();
+        return findByIdMetrics.time(() -> bookings.findById(bookingId));
+    }
+
+    /**
+     * The customer's booking as held in the in-memory indexes, without going to storage,
+     * e.g. to resolve the booking of an invoice while its row is being read
+     */
+    public Optional<Booking> findIndexedBooking(String customerId, String bookingId) {
+        NavigableMap<Long, Booking> ofCustomer = bookingsByCustomer.get(customerId);
+        Booking booking = ofCustomer == null ? null : ofCustomer.get(bookingIds.parse(bookingId));
+        return booking != null && booking.getBookingId().equals(bookingId) ? Optional.of(booking) : Optional.empty();
     }
 
+    public Optional<Booking> findBookingByNumber(long bookingNumber) {
+        return findByNumberMetrics.time(() ->
+                bookings.findById(IdAllocator.render(Booking.ID_PREFIX, bookingNumber)));
+    }
+
+    /**
+     * Bookings of customers whose name contains the given text, ignoring case.
+     * Matching customers come from the name index and are mapped straight to their
+     * bookings through the customer index, so bookings are never scanned.
+     */
     public List<Booking> findBookingsByCustomerName(String customerName) {
-        return bookings.stream()
-                .filter(b -> b.getCustomer().getName().toLowerCase()
-                        .contains(customerName.toLowerCase()))
-                .collect(Collectors.toList());
+        return findByCustomerNameMetrics.time(() -> {
+            List<Booking> result = new ArrayList<>();
+            if (customerService != null) {
+                for (Customer customer : customerService.findCustomersByName(customerName)) {
+                    NavigableMap<Long, Booking> customerBookings = bookingsByCustomer.get(customer.getCustomerId());
+                    if (customerBookings != null) {
+                        result.addAll(customerBookings.values());
+                    }
+                }
+            } else {
+                // Without a customer service, check each booking customer once
+                for (NavigableMap<Long, Booking> customerBookings : bookingsByCustomer.values()) {
+                    Map.Entry<Long, Booking> first = customerBookings.firstEntry();
+                    if (first != null && NGramIndex.containsIgnoreCase(
+                            first.getValue().getCustomer().getName(), customerName)) {
+                        result.addAll(customerBookings.values());
+                    }
+                }
+            }
+            result.sort(Comparator.comparingLong(Booking::getBookingNumber));
+            return result;
+        });
     }
 
     public List<Booking> getBookingsByCustomer(String customerId) {
-        return bookings.stream()
-                .filter(b -> b.getCustomer().getCustomerId().equals(customerId))
-                .collect(Collectors.toList());
+        return getByCustomerMetrics.time(() -> valuesOf(bookingsByCustomer.get(customerId)));
     }
 
+    public List<Booking> getBookingsByVehicle(String carId) {
+        return getByVehicleMetrics.time(() -> valuesOf(bookingsByVehicle.get(carId)));
+    }
+
+    /**
+     * Every booking copied into a new list; getBookingPage lists them without copying
+     */
     public List<Booking> getAllBookings() {
-        return new ArrayList<>(bookings);
+        return getAllMetrics.time(() -> bookings.findAll());
+    }
+
+    /**
+     * Up to limit bookings in booking number order, after the given cursor (Page.FIRST to start)
+     */
+    public Page<Booking> getBookingPage(long cursor, int limit) {
+        return getPageMetrics.time(() -> bookings.findPage(cursor, limit));
     }
 
     public List<Booking> getActiveBookings() {
-        return bookings.stream()
-                .filter(Booking::isActive)
-                .collect(Collectors.toList());
+        return getActiveMetrics.time(() -> new ArrayList<>(activeBookings.values()));
+    }
+
+    /**
+     * Active bookings whose rental period has ended on or before the given date
+     */
+    public List<Booking> getCompletedBookings(LocalDate asOf) {
+        return getCompletedMetrics.time(() -> {
+            List<Booking> completed = new ArrayList<>();
+            for (Booking booking : activeBookings.values()) {
+                if (!booking.getEndDate().isAfter(asOf)) {
+                    completed.add(booking);
+                }
+            }
+            return completed;
+        });
     }
 
-    public boolean cancelBooking(String bookingId) throws Exception {
-        Optional<Booking> bookingOpt = findBookingById(bookingId);
+    private static List<Booking> valuesOf(NavigableMap<Long, Booking> index) {
+        return index == null ? new ArrayList<>() : new ArrayList<>(index.values());
+    }
+
+    public boolean cancelBooking(String bookingId) throws BookingRejectedException {
+        tryCancelBooking(bookingId).orElseThrow();
+        return true;
+    }
+
+    /**
+     * Like cancelBooking, but reports a rejection in the result instead of throwing
+     */
+    public BookingResult tryCancelBooking(String bookingId) {
+        BookingEvent event = new BookingEvent.Cancelled();
+        event.begin();
+        try {
+            BookingResult result = cancelMetrics.time(() -> cancel(bookingId), BookingResult::isAccepted);
+            complete(event, bookingId, null, result);
+            return result;
+        } catch (RuntimeException e) {
+            complete(event, bookingId, null, e);
+            throw e;
+        }
+    }
+
+    private BookingResult cancel(String bookingId) {
+        Optional<Booking> bookingOpt = bookings.findById(bookingId);
         if (!bookingOpt.isPresent()) {
-            throw new Exception("Booking not found with ID: " + bookingId);
+            return BookingResult.rejected(RejectionCode.BOOKING_NOT_FOUND, bookingId);
         }
 
         Booking booking = bookingOpt.get();
-        if (!booking.isActive()) {
-            throw new Exception("Booking is already cancelled.");
-        }
+        String carId = booking.getVehicle().getCarId();
+        StampedLock lock = vehicleLocks.lockFor(carId);
+        long stamp = lock.writeLock();
+        try {
+            if (!booking.isActive()) {
+                return ALREADY_CANCELLED;
+            }
 
-        if (!booking.canBeCancelled()) {
-            throw new Exception("Booking cannot be cancelled. Cancellation deadline has passed " +
-                    "(must cancel within " + Booking.CANCELLATION_DEADLINE_DAYS + " days of booking).");
+            if (!booking.canBeCancelled()) {
+                return CANCELLATION_DEADLINE_PASSED;
+            }
+
+            booking.setActive(false);
+            activeBookings.remove(booking.getBookingNumber());
+            calendarFor(carId).release(booking);
+            bookings.save(booking);
+            for (ServiceListener listener : listeners) {
+                listener.bookingCancelled(booking);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
 
-        booking.setActive(false);
-        vehicleService.updateAvailabilityStatus(
-                booking.getVehicle().getCarId(), 
-                AvailabilityStatus.AVAILABLE
-        );
+        fireCommitted();
+        return BookingResult.accepted(booking);
+    }
 
+    public boolean updateBooking(String bookingId, LocalDate newStartDate, 
+                                LocalDate newEndDate, int newTotalKilometers) throws BookingRejectedException {
+        tryUpdateBooking(bookingId, newStartDate, newEndDate, newTotalKilometers).orElseThrow();
         return true;
     }
 
-    public boolean updateBooking(String bookingId, LocalDate newStartDate, 
-                                LocalDate newEndDate, int newTotalKilometers) throws Exception {
-        Optional<Booking> bookingOpt = findBookingById(bookingId);
-        if (!bookingOpt.isPresent()) {
-            throw new Exception("Booking not found with ID: " + bookingId);
+    /**
+     * Like updateBooking, but reports a rejection in the result instead of throwing
+     */
+    public BookingResult tryUpdateBooking(String bookingId, LocalDate newStartDate,
+                                          LocalDate newEndDate, int newTotalKilometers) {
+        BookingEvent event = new BookingEvent.Updated();
+        event.begin();
+        try {
+            BookingResult result = updateMetrics.time(() ->
+                    update(bookingId, newStartDate, newEndDate, newTotalKilometers), BookingResult::isAccepted);
+            complete(event, bookingId, null, result);
+            return result;
+        } catch (RuntimeException e) {
+            complete(event, bookingId, null, e);
+            throw e;
         }
+    }
 
-        Booking booking = bookingOpt.get();
-        if (!booking.canBeCancelled()) {
-            throw new Exception("Booking cannot be updated. Update deadline has passed " +
-                    "(must update within " + Booking.CANCELLATION_DEADLINE_DAYS + " days of booking).");
+    private BookingResult update(String bookingId, LocalDate newStartDate,
+                                 LocalDate newEndDate, int newTotalKilometers) {
+        Optional<Booking> bookingOpt = bookings.findById(bookingId);
+        if (!bookingOpt.isPresent()) {
+            return BookingResult.rejected(RejectionCode.BOOKING_NOT_FOUND, bookingId);
         }
 
         // Validate new dates
         long daysUntilStart = ChronoUnit.DAYS.between(LocalDate.now(), newStartDate);
         if (daysUntilStart < Booking.MIN_ADVANCE_BOOKING_DAYS) {
-            throw new Exception("Booking must be made at least " + 
-                    Booking.MIN_ADVANCE_BOOKING_DAYS + " days in advance.");
+            return INSUFFICIENT_NOTICE;
         }
 
         if (newEndDate.isBefore(newStartDate) || newEndDate.equals(newStartDate)) {
-            throw new Exception("End date must be after start date.");
+            return INVALID_DATE_RANGE;
         }
 
-        booking.setStartDate(newStartDate);
-        booking.setEndDate(newEndDate);
-        booking.setTotalKilometers(newTotalKilometers);
+        Booking booking = bookingOpt.get();
+        String carId = booking.getVehicle().getCarId();
+        StampedLock lock = vehicleLocks.lockFor(carId);
+        long stamp = lock.writeLock();
+        try {
+            if (!booking.canBeCancelled()) {
+                return UPDATE_DEADLINE_PASSED;
+            }
 
-        return true;
+            // Move the reservation, restoring the original dates if the new ones clash
+            ReservationCalendar calendar = calendarFor(carId);
+            calendar.release(booking);
+            Booking conflict = calendar.findConflict(newStartDate, newEndDate);
+            if (conflict != null) {
+                calendar.reserve(booking);
+                return alreadyReserved(conflict);
+            }
+
+            booking.setStartDate(newStartDate);
+            booking.setEndDate(newEndDate);
+            booking.setTotalKilometers(newTotalKilometers);
+            calendar.reserve(booking);
+            bookings.save(booking);
+            for (ServiceListener listener : listeners) {
+                listener.bookingUpdated(booking);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        fireCommitted();
+        return BookingResult.accepted(booking);
     }
 }
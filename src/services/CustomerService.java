@@ -1,61 +1,221 @@
 package services;
 
 import models.Customer;
-import java.util.ArrayList;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.ServiceMetrics;
+import services.repository.InMemoryRepository;
+import services.repository.Page;
+import services.repository.Repository;
+import utils.IdAllocator;
+import utils.NGramIndex;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 /**
  * Service class for managing customer operations
  */
 public class CustomerService {
-    private List<Customer> customers;
-    private int customerCounter;
+    // Keyed by the case-folded NIC/passport so lookups match equalsIgnoreCase semantics
+    private Map<String, Customer> customersByNicOrPassport;
+    // Storage of record keyed by customerId, listed in registration order
+    private Repository<Customer> customers;
+    // Trigram index for substring search on customer names
+    private NGramIndex<Customer> nameIndex;
+    private IdAllocator customerIds;
+    private List<ServiceListener> listeners;
+
+    // Calls, failures and latencies of the public operations
+    private final ServiceMetrics metrics = new ServiceMetrics("customers");
+    private final OperationMetrics registerMetrics = metrics.operation("registerCustomer");
+    private final OperationMetrics updateMetrics = metrics.operation("updateCustomer");
+    private final OperationMetrics findByIdMetrics = metrics.operation("findCustomerById");
+    private final OperationMetrics findByNumberMetrics = metrics.operation("findCustomerByNumber");
+    private final OperationMetrics findByNicMetrics = metrics.operation("findCustomerByNicOrPassport");
+    private final OperationMetrics findByNameMetrics = metrics.operation("findCustomersByName");
+    private final OperationMetrics getAllMetrics = metrics.operation("getAllCustomers");
+    private final OperationMetrics getPageMetrics = metrics.operation("getCustomerPage");
 
     public CustomerService() {
-        this.customers = new ArrayList<>();
-        this.customerCounter = 1;
+        this(new InMemoryRepository<>(Customer::getCustomerId, Customer::getCustomerNumber));
     }
-    public Customer registerCustomer(String nicOrPassport, String name, 
-                                    String contactNumber, String email) {
-        // Check if customer already exists
-        Optional<Customer> existing = findCustomerByNicOrPassport(nicOrPassport);
-        if (existing.isPresent()) {
-            return existing.get();
+
+    /**
+     * Creates the service over the given storage, indexing the customers already stored there
+     */
+    public CustomerService(Repository<Customer> customers) {
+        this.customersByNicOrPassport = new ConcurrentHashMap<>();
+        this.customers = customers;
+        this.nameIndex = new NGramIndex<>();
+        this.customerIds = new IdAllocator(Customer.ID_PREFIX);
+        this.listeners = new CopyOnWriteArrayList<>();
+        for (Customer customer : customers.findAll()) {
+            customerIds.advancePast(customer.getCustomerNumber());
+            customersByNicOrPassport.put(normalize(customer.getNicOrPassport()), customer);
+            nameIndex.add(customer, customer.getName());
         }
+    }
+
+    public void addListener(ServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes the operation metrics and a gauge of the registered customers
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(metrics);
+        registry.gauge("customers", "Registered customers", customersByNicOrPassport::size);
+    }
+
+    public Customer registerCustomer(String nicOrPassport, String name,
+                                    String contactNumber, String email) {
+        return registerMetrics.time(() -> {
+            String key = normalize(nicOrPassport);
+            while (true) {
+                // Return the existing customer if the NIC/passport is already registered
+                Customer existing = customersByNicOrPassport.get(key);
+                if (existing == null) {
+                    // The key is claimed atomically; storage and listeners run outside the map's
+                    // locks, holding the customer's monitor as updateCustomer does. A caller
+                    // that loses the race leaves a gap in the customer numbers.
+                    Customer customer = new Customer(customerIds.next(), nicOrPassport, name, contactNumber, email);
+                    synchronized (customer) {
+                        existing = customersByNicOrPassport.putIfAbsent(key, customer);
+                        if (existing == null) {
+                            try {
+                                indexCustomer(customer);
+                            } catch (RuntimeException e) {
+                                // Not stored, so release the claim for a retry
+                                customersByNicOrPassport.remove(key, customer);
+                                throw e;
+                            }
+                            for (ServiceListener listener : listeners) {
+                                listener.customerRegistered(customer);
+                            }
+                        }
+                    }
+                    if (existing == null) {
+                        fireCommitted();
+                        return customer;
+                    }
+                }
+                // Wait for a registration still in progress, so the customer returned is stored.
+                // One whose store failed has released its claim by then, so register again.
+                synchronized (existing) {
+                    if (customersByNicOrPassport.get(key) == existing) {
+                        return existing;
+                    }
+                }
+            }
+        });
+    }
+
+    private void indexCustomer(Customer customer) {
+        customers.save(customer);
+        nameIndex.add(customer, customer.getName());
+    }
 
-        String customerId = generateCustomerId();
-        Customer customer = new Customer(customerId, nicOrPassport, name, contactNumber, email);
-        customers.add(customer);
+    /**
+     * Applies a persisted customer state: registers the customer under its original
+     * number if it is unknown, otherwise overwrites its details. Listeners are not notified.
+     */
+    public Customer restoreCustomer(long customerNumber, String nicOrPassport, String name,
+                                    String contactNumber, String email) {
+        customerIds.advancePast(customerNumber);
+        Customer existing = customers.findById(IdAllocator.render(Customer.ID_PREFIX, customerNumber)).orElse(null);
+        if (existing != null) {
+            existing.setName(name);
+            nameIndex.add(existing, name);
+            existing.setContactNumber(contactNumber);
+            existing.setEmail(email);
+            customers.save(existing);
+            return existing;
+        }
+        Customer customer = new Customer(customerNumber, nicOrPassport, name, contactNumber, email);
+        customersByNicOrPassport.put(normalize(nicOrPassport), customer);
+        indexCustomer(customer);
         return customer;
     }
 
-    private String generateCustomerId() {
-        return String.format("C%04d", customerCounter++);
+    private static String normalize(String nicOrPassport) {
+        return nicOrPassport.toUpperCase(Locale.ROOT);
     }
 
     public Optional<Customer> findCustomerById(String customerId) {
-        return customers.stream()
-                .filter(c -> c.getCustomerId().equals(customerId))
-                .findFirst();
+        return findByIdMetrics.time(() -> customers.findById(customerId));
+    }
+
+    public Optional<Customer> findCustomerByNumber(long customerNumber) {
+        return findByNumberMetrics.time(() ->
+                customers.findById(IdAllocator.render(Customer.ID_PREFIX, customerNumber)));
     }
 
     public Optional<Customer> findCustomerByNicOrPassport(String nicOrPassport) {
-        return customers.stream()
-                .filter(c -> c.getNicOrPassport().equalsIgnoreCase(nicOrPassport))
-                .findFirst();
+        return findByNicMetrics.time(() ->
+                Optional.ofNullable(customersByNicOrPassport.get(normalize(nicOrPassport))));
+    }
+
+    /**
+     * Customers whose name contains the given text, ignoring case
+     */
+    public List<Customer> findCustomersByName(String namePart) {
+        return findByNameMetrics.time(() -> nameIndex.search(namePart));
     }
+
+    /**
+     * Every customer copied into a new list; getCustomerPage lists them without copying
+     */
     public List<Customer> getAllCustomers() {
-        return new ArrayList<>(customers);
+        return getAllMetrics.time(() -> customers.findAll());
+    }
+
+    /**
+     * Up to limit customers in registration order, after the given cursor (Page.FIRST to start)
+     */
+    public Page<Customer> getCustomerPage(long cursor, int limit) {
+        return getPageMetrics.time(() -> customers.findPage(cursor, limit));
     }
     public boolean updateCustomer(String customerId, String name, String contactNumber, String email) {
-        Optional<Customer> customerOpt = findCustomerById(customerId);
-        if (customerOpt.isPresent()) {
-            Customer customer = customerOpt.get();
-            customer.setName(name);
-            customer.setContactNumber(contactNumber);
-            customer.setEmail(email);
-            return true;
+        return updateMetrics.timeOutcome(() -> {
+            Optional<Customer> customerOpt = customers.findById(customerId);
+            if (customerOpt.isPresent()) {
+                Customer customer = customerOpt.get();
+                // Concurrent updates of one customer reach listeners in the order they were applied
+                synchronized (customer) {
+                    customer.setName(name);
+                    nameIndex.add(customer, name);
+                    customer.setContactNumber(contactNumber);
+                    customer.setEmail(email);
+                    customers.save(customer);
+                    for (ServiceListener listener : listeners) {
+                        listener.customerUpdated(customer);
+                    }
+                }
+                fireCommitted();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Ensures customer numbers up to the given one are never handed out to new customers
+     */
+    public void advanceCustomerNumbersPast(long usedNumber) {
+        customerIds.advancePast(usedNumber);
+    }
+
+    private void fireCommitted() {
+        for (ServiceListener listener : listeners) {
+            listener.mutationCommitted();
         }
-        return false;
     }
 }
@@ -1,47 +1,486 @@
 package services;
 
 import models.Booking;
+import models.Customer;
 import models.Invoice;
+import models.Vehicle;
+import metrics.InvoiceEvent;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.ServiceMetrics;
+import pricing.PricingEngine;
+import services.repository.InMemoryRepository;
+import services.repository.Page;
+import services.repository.Repository;
+import utils.IdAllocator;
+import utils.LruCache;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing invoice operations
  */
 public class InvoiceService {
-    private List<Invoice> invoices;
-    private int invoiceCounter;
+    // Storage of record keyed by invoiceId, listed in generation order
+    private Repository<Invoice> invoices;
+    // One invoice per bookingId
+    private Map<String, Invoice> invoicesByBookingId;
+    private IdAllocator invoiceIds;
+
+    // Rendered invoice documents keyed by invoiceId, bounded by approximate size in bytes
+    public static final long DEFAULT_RENDER_CACHE_BYTES = 8L * 1024 * 1024;
+    private LruCache<String, String> renderedInvoices;
+    // Invoice IDs per booking, customer and vehicle, used to invalidate rendered documents
+    private Map<String, Set<String>> invoiceIdsByBookingId;
+    private Map<String, Set<String>> invoiceIdsByCustomerId;
+    private Map<String, Set<String>> invoiceIdsByCarId;
+    // Invoices whose booking or vehicle changed since they were last priced
+    private Set<String> pendingRepricing;
+    private List<ServiceListener> listeners;
+    // Sum of the final amounts of all invoices as last priced, kept for the invoice total gauge
+    private final LongAdder invoicedCents = new LongAdder();
+
+    // Calls, failures and latencies of the public operations
+    private final ServiceMetrics metrics = new ServiceMetrics("invoices");
+    private final OperationMetrics generateMetrics = metrics.operation("generateInvoice");
+    private final OperationMetrics generateIfAbsentMetrics = metrics.operation("generateInvoiceIfAbsent");
+    private final OperationMetrics generateBatchMetrics = metrics.operation("generateInvoices");
+    private final OperationMetrics findByIdMetrics = metrics.operation("findInvoiceById");
+    private final OperationMetrics findByBookingIdMetrics = metrics.operation("findInvoiceByBookingId");
+    private final OperationMetrics getAllMetrics = metrics.operation("getAllInvoices");
+    private final OperationMetrics getPageMetrics = metrics.operation("getInvoicePage");
+    private final OperationMetrics flushRepricingMetrics = metrics.operation("flushRepricing");
+    private final OperationMetrics getRenderedMetrics = metrics.operation("getRenderedInvoice");
 
     public InvoiceService() {
-        this.invoices = new ArrayList<>();
-        this.invoiceCounter = 1;
+        this(DEFAULT_RENDER_CACHE_BYTES);
+    }
+
+    public InvoiceService(long renderCacheBytes) {
+        this(renderCacheBytes, new InMemoryRepository<>(Invoice::getInvoiceId, Invoice::getInvoiceNumber));
+    }
+
+    /**
+     * Creates the service over the given storage, indexing the invoices already stored there
+     */
+    public InvoiceService(long renderCacheBytes, Repository<Invoice> invoices) {
+        this.invoices = invoices;
+        this.invoicesByBookingId = new ConcurrentHashMap<>();
+        this.invoiceIds = new IdAllocator(Invoice.ID_PREFIX);
+        this.renderedInvoices = new LruCache<>(renderCacheBytes, InvoiceService::approximateBytes);
+        this.invoiceIdsByBookingId = new ConcurrentHashMap<>();
+        this.invoiceIdsByCustomerId = new ConcurrentHashMap<>();
+        this.invoiceIdsByCarId = new ConcurrentHashMap<>();
+        this.pendingRepricing = ConcurrentHashMap.newKeySet();
+        this.listeners = new CopyOnWriteArrayList<>();
+        for (Invoice invoice : invoices.findAll()) {
+            invoiceIds.advancePast(invoice.getInvoiceNumber());
+            indexSecondary(invoice);
+            invoicedCents.add(invoice.getPricing().getFinalAmountCents());
+        }
+    }
+
+    /**
+     * Creates the service and keeps invoices and cached invoice documents in step
+     * with booking, vehicle and customer updates
+     */
+    public InvoiceService(BookingService bookingService, CustomerService customerService) {
+        this(bookingService, customerService,
+                new InMemoryRepository<>(Invoice::getInvoiceId, Invoice::getInvoiceNumber));
+    }
+
+    public InvoiceService(BookingService bookingService, CustomerService customerService,
+                          Repository<Invoice> invoices) {
+        this(DEFAULT_RENDER_CACHE_BYTES, invoices);
+        ServiceListener invalidator = new ServiceListener() {
+            @Override
+            public void bookingUpdated(Booking booking) {
+                markForRepricing(booking.getBookingId());
+                invalidateBooking(booking.getBookingId());
+            }
+
+            // The model is printed on the invoice and the category sets its rates
+            @Override
+            public void vehicleUpdated(Vehicle vehicle) {
+                markVehicleForRepricing(vehicle.getCarId());
+                invalidateVehicle(vehicle.getCarId());
+            }
+
+            @Override
+            public void customerUpdated(Customer customer) {
+                invalidateCustomer(customer.getCustomerId());
+            }
+        };
+        bookingService.addListener(invalidator);
+        bookingService.getVehicleService().addListener(invalidator);
+        customerService.addListener(invalidator);
+    }
+
+    public void addListener(ServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes the operation metrics and gauges of the invoice count and total. The
+     * total covers invoices as last priced, so it moves with a booking update once
+     * the invoice is read or the repricing queue flushed.
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(metrics);
+        registry.gauge("invoices", "Invoices generated", invoices::count);
+        registry.gauge("invoices_amount", "Final amount of all invoices",
+                () -> PricingEngine.toAmount(invoicedCents.sum()));
+        registry.gauge("invoices_pending_repricing", "Invoices whose booking changed since they were priced",
+                pendingRepricing::size);
     }
 
     public Invoice generateInvoice(Booking booking) {
-        String invoiceId = generateInvoiceId();
-        Invoice invoice = new Invoice(invoiceId, booking);
-        invoices.add(invoice);
+        InvoiceEvent event = new InvoiceEvent();
+        event.begin();
+        try {
+            Invoice invoice = generateMetrics.time(() -> generate(booking));
+            complete(event, booking, invoice, null);
+            return invoice;
+        } catch (RuntimeException e) {
+            complete(event, booking, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Generates the booking's invoice unless it already has one. The booking is
+     * claimed in the bookingId index before the invoice is stored, so of concurrent
+     * callers exactly one generates it; the others get an empty result and find
+     * that invoice through findInvoiceByBookingId.
+     */
+    public Optional<Invoice> generateInvoiceIfAbsent(Booking booking) {
+        InvoiceEvent event = new InvoiceEvent();
+        event.begin();
+        try {
+            Invoice invoice = generateIfAbsentMetrics.time(() -> generateIfAbsent(booking));
+            // Nothing was generated when the booking was already invoiced
+            if (invoice != null) {
+                complete(event, booking, invoice, null);
+            }
+            return Optional.ofNullable(invoice);
+        } catch (RuntimeException e) {
+            complete(event, booking, null, e);
+            throw e;
+        }
+    }
+
+    private Invoice generateIfAbsent(Booking booking) {
+        String bookingId = booking.getBookingId();
+        if (invoicesByBookingId.containsKey(bookingId)) {
+            return null;
+        }
+        // A caller that loses the race leaves a gap in the invoice numbers, as batches do
+        Invoice invoice = new Invoice(invoiceIds.next(), booking);
+        if (invoicesByBookingId.putIfAbsent(bookingId, invoice) != null) {
+            return null;
+        }
+        try {
+            return publish(invoice);
+        } catch (RuntimeException e) {
+            // Not stored, so release the claim for a retry
+            invoicesByBookingId.remove(bookingId, invoice);
+            throw e;
+        }
+    }
+
+    private Invoice generate(Booking booking) {
+        return publish(new Invoice(invoiceIds.next(), booking));
+    }
+
+    private Invoice publish(Invoice invoice) {
+        indexInvoice(invoice);
+        for (ServiceListener listener : listeners) {
+            listener.invoiceGenerated(invoice);
+        }
+        fireCommitted();
+        return invoice;
+    }
+
+    // Commits the Flight Recorder event only if a recording wants it
+    private static void complete(InvoiceEvent event, Booking booking, Invoice invoice, Exception failure) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.complete(booking, invoice, failure);
+        }
+    }
+
+    /**
+     * Applies a persisted invoice: indexes it under its original number and generation
+     * time unless it is already known. Listeners are not notified.
+     */
+    public Invoice restoreInvoice(long invoiceNumber, Booking booking, LocalDateTime generatedDate) {
+        invoiceIds.advancePast(invoiceNumber);
+        Invoice existing = invoices.findById(IdAllocator.render(Invoice.ID_PREFIX, invoiceNumber)).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+        Invoice invoice = new Invoice(invoiceNumber, booking, generatedDate);
+        indexInvoice(invoice);
         return invoice;
     }
 
-    private String generateInvoiceId() {
-        return String.format("INV%04d", invoiceCounter++);
+    /**
+     * Ensures invoice numbers up to the given one, e.g. those of invoices still being
+     * restored, are never handed out to new invoices
+     */
+    public void advanceInvoiceNumbersPast(long usedNumber) {
+        invoiceIds.advancePast(usedNumber);
+    }
+
+    private void fireCommitted() {
+        for (ServiceListener listener : listeners) {
+            listener.mutationCommitted();
+        }
+    }
+
+    /**
+     * Invoices a batch of bookings, e.g. every completed booking at month end.
+     * Cancelled bookings, repeats within the batch and bookings that already have an
+     * invoice are skipped. Invoice IDs are reserved as one contiguous block, pricing
+     * runs in parallel on the fork-join pool, and the results are published into the
+     * invoice indexes in a single pass.
+     */
+    public BatchInvoiceResult generateInvoices(Collection<Booking> bookings) {
+        return generateBatchMetrics.time(() -> {
+            long started = System.nanoTime();
+
+            Map<String, Booking> pending = new LinkedHashMap<>();
+            for (Booking booking : bookings) {
+                if (booking.isActive() && !invoicesByBookingId.containsKey(booking.getBookingId())) {
+                    pending.putIfAbsent(booking.getBookingId(), booking);
+                }
+            }
+            int skipped = bookings.size() - pending.size();
+
+            List<Booking> toInvoice = new ArrayList<>(pending.values());
+            long firstNumber = invoiceIds.nextBlock(toInvoice.size());
+            Invoice[] priced = new Invoice[toInvoice.size()];
+            IntStream.range(0, priced.length).parallel()
+                    .forEach(i -> priced[i] = new Invoice(firstNumber + i, toInvoice.get(i)));
+
+            List<Invoice> generated = new ArrayList<>(priced.length);
+            for (Invoice invoice : priced) {
+                // A booking invoiced concurrently by generateInvoice keeps that invoice
+                if (invoicesByBookingId.putIfAbsent(invoice.getBooking().getBookingId(), invoice) != null) {
+                    skipped++;
+                    continue;
+                }
+                generated.add(invoice);
+            }
+            // Stored as one batch, then indexed and announced
+            try {
+                invoices.saveAll(generated);
+            } catch (RuntimeException e) {
+                // Nothing was stored, so release every claim for a retry
+                for (Invoice invoice : generated) {
+                    invoicesByBookingId.remove(invoice.getBooking().getBookingId(), invoice);
+                }
+                throw e;
+            }
+            for (Invoice invoice : generated) {
+                indexDependencies(invoice);
+                invoicedCents.add(invoice.getPricing().getFinalAmountCents());
+                for (ServiceListener listener : listeners) {
+                    listener.invoiceGenerated(invoice);
+                }
+            }
+            if (!generated.isEmpty()) {
+                fireCommitted();
+            }
+
+            return new BatchInvoiceResult(generated, skipped, System.nanoTime() - started);
+        });
+    }
+
+    public BatchInvoiceResult generateInvoices(Stream<Booking> bookings) {
+        return generateInvoices(bookings.collect(Collectors.toList()));
+    }
+
+    private void indexInvoice(Invoice invoice) {
+        invoices.save(invoice);
+        indexSecondary(invoice);
+        invoicedCents.add(invoice.getPricing().getFinalAmountCents());
+    }
+
+    private void indexSecondary(Invoice invoice) {
+        // The first invoice generated for a booking is the one looked up by bookingId
+        invoicesByBookingId.putIfAbsent(invoice.getBooking().getBookingId(), invoice);
+        indexDependencies(invoice);
+    }
+
+    private void indexDependencies(Invoice invoice) {
+        Booking booking = invoice.getBooking();
+        invoiceIdsByBookingId.computeIfAbsent(booking.getBookingId(), id -> ConcurrentHashMap.newKeySet())
+                .add(invoice.getInvoiceId());
+        invoiceIdsByCustomerId.computeIfAbsent(booking.getCustomer().getCustomerId(), id -> ConcurrentHashMap.newKeySet())
+                .add(invoice.getInvoiceId());
+        invoiceIdsByCarId.computeIfAbsent(booking.getVehicle().getCarId(), id -> ConcurrentHashMap.newKeySet())
+                .add(invoice.getInvoiceId());
     }
 
     public Optional<Invoice> findInvoiceById(String invoiceId) {
-        return invoices.stream()
-                .filter(i -> i.getInvoiceId().equals(invoiceId))
-                .findFirst();
+        return findByIdMetrics.time(() ->
+                Optional.ofNullable(repriceIfPending(invoices.findById(invoiceId).orElse(null))));
     }
 
     public Optional<Invoice> findInvoiceByBookingId(String bookingId) {
-        return invoices.stream()
-                .filter(i -> i.getBooking().getBookingId().equals(bookingId))
-                .findFirst();
+        return findByBookingIdMetrics.time(() ->
+                Optional.ofNullable(repriceIfPending(invoicesByBookingId.get(bookingId))));
     }
 
+    /**
+     * Every invoice copied into a new list; getInvoicePage lists them without copying
+     */
     public List<Invoice> getAllInvoices() {
-        return new ArrayList<>(invoices);
+        return getAllMetrics.time(() -> {
+            repricePending();
+            return invoices.findAll();
+        });
+    }
+
+    /**
+     * Up to limit invoices in invoice number order, after the given cursor (Page.FIRST
+     * to start). Only the invoices on the page are repriced.
+     */
+    public Page<Invoice> getInvoicePage(long cursor, int limit) {
+        return getPageMetrics.time(() -> {
+            Page<Invoice> page = invoices.findPage(cursor, limit);
+            for (Invoice invoice : page.getItems()) {
+                repriceIfPending(invoice);
+            }
+            return page;
+        });
+    }
+
+    /**
+     * Queues the invoices of an updated booking for repricing. Nothing is
+     * recomputed here, so a burst of updates to the same booking costs one
+     * repricing when the invoice is next read or the queue is flushed.
+     */
+    public void markForRepricing(String bookingId) {
+        markAllForRepricing(invoiceIdsByBookingId.get(bookingId));
+    }
+
+    /**
+     * Queues the invoices of every booking of an updated vehicle for repricing,
+     * since its category sets their rates
+     */
+    public void markVehicleForRepricing(String carId) {
+        markAllForRepricing(invoiceIdsByCarId.get(carId));
+    }
+
+    private void markAllForRepricing(Set<String> invoiceIds) {
+        if (invoiceIds != null) {
+            pendingRepricing.addAll(invoiceIds);
+        }
+    }
+
+    /**
+     * Reprices every queued invoice in one pass and returns how many had line
+     * items change
+     */
+    public int flushRepricing() {
+        return flushRepricingMetrics.time(this::repricePending);
+    }
+
+    private int repricePending() {
+        int repriced = 0;
+        for (String invoiceId : pendingRepricing) {
+            if (pendingRepricing.remove(invoiceId) && reprice(invoices.findById(invoiceId).orElse(null))) {
+                repriced++;
+            }
+        }
+        return repriced;
+    }
+
+    public int getPendingRepricingCount() {
+        return pendingRepricing.size();
+    }
+
+    private Invoice repriceIfPending(Invoice invoice) {
+        if (invoice != null && pendingRepricing.remove(invoice.getInvoiceId())) {
+            reprice(invoice);
+        }
+        return invoice;
+    }
+
+    private boolean reprice(Invoice invoice) {
+        if (invoice == null) {
+            return false;
+        }
+        int changed;
+        // Held across the reprice so concurrent repricings of one invoice each see their own change
+        synchronized (invoice) {
+            long before = invoice.getPricing().getFinalAmountCents();
+            changed = invoice.reprice();
+            invoicedCents.add(invoice.getPricing().getFinalAmountCents() - before);
+        }
+        if (changed == 0) {
+            return false;
+        }
+        renderedInvoices.invalidate(invoice.getInvoiceId());
+        return true;
+    }
+
+    /**
+     * The printable invoice document. Repeat views are served from the render cache
+     * until the invoice's booking or customer changes.
+     */
+    public Optional<String> getRenderedInvoice(String invoiceId) {
+        return getRenderedMetrics.time(() -> {
+            repriceIfPending(invoices.findById(invoiceId).orElse(null));
+            return Optional.ofNullable(renderedInvoices.getOrLoad(invoiceId, id ->
+                    invoices.findById(id).map(Invoice::getFormattedInvoice).orElse(null)));
+        });
+    }
+
+    public void invalidateBooking(String bookingId) {
+        invalidateAll(invoiceIdsByBookingId.get(bookingId));
+    }
+
+    public void invalidateCustomer(String customerId) {
+        invalidateAll(invoiceIdsByCustomerId.get(customerId));
+    }
+
+    public void invalidateVehicle(String carId) {
+        invalidateAll(invoiceIdsByCarId.get(carId));
+    }
+
+    private void invalidateAll(Set<String> invoiceIds) {
+        if (invoiceIds != null) {
+            for (String invoiceId : invoiceIds) {
+                renderedInvoices.invalidate(invoiceId);
+            }
+        }
+    }
+
+    public LruCache<String, String> getRenderCache() {
+        return renderedInvoices;
+    }
+
+    private static long approximateBytes(String rendered) {
+        // Two bytes per char plus object headers
+        return 2L * rendered.length() + 64;
     }
 }
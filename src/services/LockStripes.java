@@ -0,0 +1,58 @@
+package services;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of locks shared by hashing keys onto stripes.
+ * Operations on the same key always serialize on the same lock, while
+ * operations on different keys usually land on different stripes and run
+ * in parallel, without allocating a lock per key. The locks are StampedLocks:
+ * mutations take the write lock and queries read optimistically.
+ */
+final class LockStripes {
+    private final StampedLock[] locks;
+    private final int mask;
+
+    LockStripes(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    StampedLock lockFor(Object key) {
+        int h = key.hashCode();
+        // Spread the high bits so keys that differ only in their upper bits still separate
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+
+    /**
+     * Runs a read-only query without locking and keeps its result if no write
+     * lock was taken meanwhile; otherwise runs it again under the read lock.
+     * The query may observe state mid-update, so it must only read, and any
+     * exception it throws on the optimistic pass just forces the locked retry.
+     */
+    static <T> T readOptimistically(StampedLock lock, Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Read inconsistent state; the locked retry below sees a stable one
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package services;
+
+import models.Booking;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Reservation calendar for a single vehicle.
+ * Reservations are half-open date ranges [startDate, endDate) stored in a map
+ * sorted by start date. Because reservations never overlap, the only booking
+ * that can clash with a new range is the one with the latest start date before
+ * the new end date, so conflict checks are O(log n).
+ * Changes are made under the vehicle's stripe lock; the map is a concurrent skip
+ * list so availability checks can traverse it optimistically while one is made.
+ */
+class ReservationCalendar {
+    private final ConcurrentSkipListMap<LocalDate, Booking> reservations = new ConcurrentSkipListMap<>();
+
+    Booking findConflict(LocalDate startDate, LocalDate endDate) {
+        Map.Entry<LocalDate, Booking> candidate = reservations.lowerEntry(endDate);
+        if (candidate != null && candidate.getValue().getEndDate().isAfter(startDate)) {
+            return candidate.getValue();
+        }
+        return null;
+    }
+
+    boolean isFree(LocalDate startDate, LocalDate endDate) {
+        return findConflict(startDate, endDate) == null;
+    }
+
+    void reserve(Booking booking) {
+        reservations.put(booking.getStartDate(), booking);
+    }
+
+    void release(Booking booking) {
+        reservations.remove(booking.getStartDate(), booking);
+    }
+
+    boolean isEmpty() {
+        return reservations.isEmpty();
+    }
+}
@@ -0,0 +1,50 @@
+package services;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+
+/**
+ * Callback for changes made through the services.
+ * Mutation events are delivered in the order the changes were applied, while
+ * the service still holds the lock guarding the changed entity, so they must be
+ * cheap. mutationCommitted is called once the service call has finished and
+ * released its locks; listeners that need to block (e.g. until changes are
+ * durable) do so there.
+ * Every method has an empty default so listeners only implement what they need.
+ */
+public interface ServiceListener {
+    default void vehicleAdded(Vehicle vehicle) {
+    }
+
+    default void vehicleUpdated(Vehicle vehicle) {
+    }
+
+    default void vehicleStatusChanged(Vehicle vehicle) {
+    }
+
+    default void vehicleRemoved(Vehicle vehicle) {
+    }
+
+    default void customerRegistered(Customer customer) {
+    }
+
+    default void customerUpdated(Customer customer) {
+    }
+
+    default void bookingCreated(Booking booking) {
+    }
+
+    default void bookingUpdated(Booking booking) {
+    }
+
+    default void bookingCancelled(Booking booking) {
+    }
+
+    default void invoiceGenerated(Invoice invoice) {
+    }
+
+    default void mutationCommitted() {
+    }
+}
@@ -3,20 +3,126 @@ package services;
 import models.Vehicle;
 import enums.AvailabilityStatus;
 import enums.VehicleCategory;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.ServiceMetrics;
+import services.repository.InMemoryRepository;
+import services.repository.Page;
+import services.repository.Repository;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Service class for managing vehicle operations
  */
 public class VehicleService {
-    private List<Vehicle> vehicles;
+    // Hash index keyed by carId for constant time lookups and duplicate checks
+    private Map<String, Registration> vehicleIndex;
+    // CarIds being registered: claimed before the vehicle is stored, released once it is indexed
+    private final Set<String> registering = ConcurrentHashMap.newKeySet();
+    // Storage of record, listing the fleet in registration order
+    private Repository<Vehicle> vehicles;
+
+    // Secondary indexes: every vehicle occupies a dense slot and each status and
+    // category keeps a bitset of the slots it covers, so filtered queries are
+    // answered by bitset intersection instead of scanning the fleet. Mutations hold
+    // the write lock; queries read the bitsets optimistically and only take the
+    // read lock when a mutation overlapped them. Slots are handed out in registration
+    // order and not reused, so the queries list vehicles in registration order; the
+    // slots freed by removals are reclaimed by compacting once the array fills up.
+    private final StampedLock indexLock = new StampedLock();
+    private Vehicle[] slots;
+    private int nextSlot;
+    private BitSet occupiedSlots;
+    private Map<AvailabilityStatus, BitSet> statusIndex;
+    private Map<VehicleCategory, BitSet> categoryIndex;
+    private List<ServiceListener> listeners;
+
+    // Calls, failures and latencies of the public operations
+    private final ServiceMetrics metrics = new ServiceMetrics("vehicles");
+    private final OperationMetrics addVehicleMetrics = metrics.operation("addVehicle");
+    private final OperationMetrics updateVehicleMetrics = metrics.operation("updateVehicle");
+    private final OperationMetrics removeVehicleMetrics = metrics.operation("removeVehicle");
+    private final OperationMetrics updateStatusMetrics = metrics.operation("updateAvailabilityStatus");
+    private final OperationMetrics findByIdMetrics = metrics.operation("findVehicleById");
+    private final OperationMetrics getAllMetrics = metrics.operation("getAllVehicles");
+    private final OperationMetrics getPageMetrics = metrics.operation("getVehiclePage");
+    private final OperationMetrics getAvailableMetrics = metrics.operation("getAvailableVehicles");
+    private final OperationMetrics getByCategoryMetrics = metrics.operation("getVehiclesByCategory");
+    private final OperationMetrics getByStatusMetrics = metrics.operation("getVehiclesByStatus");
+    private final OperationMetrics getByStatusAndCategoryMetrics = metrics.operation("getVehiclesByStatusAndCategory");
+    private final OperationMetrics countByStatusMetrics = metrics.operation("countVehiclesByStatus");
 
     public VehicleService() {
-        this.vehicles = new ArrayList<>();
-        initializeSampleVehicles();
+        this(true);
+    }
+
+    /**
+     * Creates the service, optionally registering the sample fleet. Pass false when
+     * the fleet is restored from persisted state.
+     */
+    public VehicleService(boolean seedSampleVehicles) {
+        this(new InMemoryRepository<>(Vehicle::getCarId), seedSampleVehicles);
+    }
+
+    /**
+     * Creates the service over the given storage, indexing the vehicles already
+     * stored there. The sample fleet is only registered into empty storage.
+     */
+    public VehicleService(Repository<Vehicle> vehicles, boolean seedSampleVehicles) {
+        this.vehicleIndex = new ConcurrentHashMap<>();
+        this.vehicles = vehicles;
+        this.slots = new Vehicle[16];
+        this.occupiedSlots = new BitSet();
+        this.statusIndex = new EnumMap<>(AvailabilityStatus.class);
+        for (AvailabilityStatus status : AvailabilityStatus.values()) {
+            statusIndex.put(status, new BitSet());
+        }
+        this.categoryIndex = new EnumMap<>(VehicleCategory.class);
+        for (VehicleCategory category : VehicleCategory.values()) {
+            categoryIndex.put(category, new BitSet());
+        }
+        this.listeners = new CopyOnWriteArrayList<>();
+        List<Vehicle> stored = vehicles.findAll();
+        long stamp = indexLock.writeLock();
+        try {
+            for (Vehicle vehicle : stored) {
+                index(vehicle);
+            }
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        if (seedSampleVehicles && stored.isEmpty()) {
+            initializeSampleVehicles();
+        }
+    }
+
+    public void addListener(ServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes the operation metrics and gauges of the fleet size by status
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(metrics);
+        registry.gauge("vehicles", "Vehicles in the fleet", vehicleIndex::size);
+        for (AvailabilityStatus status : AvailabilityStatus.values()) {
+            registry.gauge("vehicles_" + status.name().toLowerCase(),
+                    "Vehicles " + status.getDisplayName().toLowerCase(), () -> countByStatus(status));
+        }
     }
 
     private void initializeSampleVehicles() {
@@ -32,55 +138,325 @@ public class VehicleService {
     }
 
     public void addVehicle(Vehicle vehicle) {
-        if (findVehicleById(vehicle.getCarId()).isPresent()) {
-            throw new IllegalArgumentException("Vehicle with ID " + vehicle.getCarId() + " already exists.");
+        addVehicleMetrics.run(() -> {
+            register(vehicle, true);
+            fireCommitted();
+        });
+    }
+
+    // Stores the vehicle, then publishes it to the indexes. The carId is claimed
+    // first, so a concurrent registration of the same carId cannot overwrite the
+    // stored row, and nothing is indexed if the store fails.
+    private void register(Vehicle vehicle, boolean notify) {
+        String carId = vehicle.getCarId();
+        if (!registering.add(carId)) {
+            throw duplicate(carId);
         }
-        vehicles.add(vehicle);
+        try {
+            if (vehicleIndex.containsKey(carId)) {
+                throw duplicate(carId);
+            }
+            synchronized (vehicle) {
+                vehicles.save(vehicle);
+                long stamp = indexLock.writeLock();
+                try {
+                    index(vehicle);
+                } finally {
+                    indexLock.unlockWrite(stamp);
+                }
+                if (notify) {
+                    for (ServiceListener listener : listeners) {
+                        listener.vehicleAdded(vehicle);
+                    }
+                }
+            }
+        } finally {
+            registering.remove(carId);
+        }
+    }
+
+    private static IllegalArgumentException duplicate(String carId) {
+        return new IllegalArgumentException("Vehicle with ID " + carId + " already exists.");
+    }
+
+    // Must be called while holding the indexLock write lock
+    private void index(Vehicle vehicle) {
+        Registration registration = new Registration(vehicle);
+        if (vehicleIndex.putIfAbsent(vehicle.getCarId(), registration) != null) {
+            throw duplicate(vehicle.getCarId());
+        }
+
+        if (nextSlot == slots.length) {
+            if (occupiedSlots.cardinality() <= slots.length / 2) {
+                compactSlots();
+            } else {
+                Vehicle[] grown = new Vehicle[slots.length * 2];
+                System.arraycopy(slots, 0, grown, 0, slots.length);
+                slots = grown;
+            }
+        }
+        int slot = nextSlot++;
+        slots[slot] = vehicle;
+        occupiedSlots.set(slot);
+        statusIndex.get(vehicle.getAvailabilityStatus()).set(slot);
+        categoryIndex.get(vehicle.getCategory()).set(slot);
+        registration.slot = slot;
+    }
+
+    // Must be called while holding the indexLock write lock. Moves every vehicle down
+    // over the freed slots, keeping their order, and renumbers the indexes to match.
+    private void compactSlots() {
+        occupiedSlots.clear();
+        for (BitSet matches : statusIndex.values()) {
+            matches.clear();
+        }
+        for (BitSet matches : categoryIndex.values()) {
+            matches.clear();
+        }
+        int next = 0;
+        for (int slot = 0; slot < nextSlot; slot++) {
+            Vehicle vehicle = slots[slot];
+            if (vehicle == null) {
+                continue;
+            }
+            slots[slot] = null;
+            slots[next] = vehicle;
+            occupiedSlots.set(next);
+            statusIndex.get(vehicle.getAvailabilityStatus()).set(next);
+            categoryIndex.get(vehicle.getCategory()).set(next);
+            vehicleIndex.get(vehicle.getCarId()).slot = next;
+            next++;
+        }
+        nextSlot = next;
     }
 
     public boolean updateVehicle(String carId, String model, VehicleCategory category) {
-        Optional<Vehicle> vehicleOpt = findVehicleById(carId);
-        if (vehicleOpt.isPresent()) {
-            Vehicle vehicle = vehicleOpt.get();
+        return updateVehicleMetrics.timeOutcome(() -> {
+            Registration registration = vehicleIndex.get(carId);
+            if (registration == null) {
+                return false;
+            }
+            Vehicle vehicle = registration.vehicle;
+            synchronized (vehicle) {
+                if (vehicleIndex.get(carId) != registration) {
+                    return false;
+                }
+                store(registration, model, category, vehicle.getAvailabilityStatus());
+                for (ServiceListener listener : listeners) {
+                    listener.vehicleUpdated(vehicle);
+                }
+            }
+            fireCommitted();
+            return true;
+        });
+    }
+
+    public boolean removeVehicle(String carId) {
+        return removeVehicleMetrics.timeOutcome(() -> {
+            if (!unregister(carId, true)) {
+                return false;
+            }
+            fireCommitted();
+            return true;
+        });
+    }
+
+    /**
+     * Applies a persisted vehicle state: registers the vehicle if it is unknown,
+     * otherwise overwrites its details. Listeners are not notified.
+     */
+    public Vehicle restoreVehicle(String carId, String model, VehicleCategory category, AvailabilityStatus status) {
+        Registration registration = vehicleIndex.get(carId);
+        if (registration == null) {
+            Vehicle vehicle = new Vehicle(carId, model, category);
+            vehicle.setAvailabilityStatus(status);
+            register(vehicle, false);
+            return vehicle;
+        }
+        synchronized (registration.vehicle) {
+            store(registration, model, category, status);
+        }
+        return registration.vehicle;
+    }
+
+    /**
+     * Removes a vehicle named by a persisted record. Listeners are not notified.
+     */
+    public void restoreRemoval(String carId) {
+        unregister(carId, false);
+    }
+
+    // Changes to a registered vehicle hold its monitor, so they reach storage and the
+    // listeners in the order they were applied, while the indexLock write lock is only
+    // held to change the fields and bitsets together, never across storage I/O.
+    // Must be called holding the vehicle's monitor. Details that fail to store are rolled back.
+    private void store(Registration registration, String model, VehicleCategory category, AvailabilityStatus status) {
+        Vehicle vehicle = registration.vehicle;
+        String previousModel = vehicle.getModel();
+        VehicleCategory previousCategory = vehicle.getCategory();
+        AvailabilityStatus previousStatus = vehicle.getAvailabilityStatus();
+        apply(registration, model, category, status);
+        try {
+            vehicles.save(vehicle);
+        } catch (RuntimeException e) {
+            apply(registration, previousModel, previousCategory, previousStatus);
+            throw e;
+        }
+    }
+
+    private void apply(Registration registration, String model, VehicleCategory category, AvailabilityStatus status) {
+        long stamp = indexLock.writeLock();
+        try {
+            Vehicle vehicle = registration.vehicle;
             vehicle.setModel(model);
+            categoryIndex.get(vehicle.getCategory()).clear(registration.slot);
             vehicle.setCategory(category);
-            return true;
+            categoryIndex.get(category).set(registration.slot);
+            statusIndex.get(vehicle.getAvailabilityStatus()).clear(registration.slot);
+            vehicle.setAvailabilityStatus(status);
+            statusIndex.get(status).set(registration.slot);
+        } finally {
+            indexLock.unlockWrite(stamp);
         }
-        return false;
     }
 
-    public boolean removeVehicle(String carId) {
-        return vehicles.removeIf(v -> v.getCarId().equals(carId));
+    // Deletes the vehicle from storage, then from the indexes
+    private boolean unregister(String carId, boolean notify) {
+        Registration registration = vehicleIndex.get(carId);
+        if (registration == null) {
+            return false;
+        }
+        Vehicle vehicle = registration.vehicle;
+        synchronized (vehicle) {
+            if (vehicleIndex.get(carId) != registration) {
+                return false;
+            }
+            vehicles.delete(carId);
+            long stamp = indexLock.writeLock();
+            try {
+                vehicleIndex.remove(carId);
+                statusIndex.get(vehicle.getAvailabilityStatus()).clear(registration.slot);
+                categoryIndex.get(vehicle.getCategory()).clear(registration.slot);
+                occupiedSlots.clear(registration.slot);
+                slots[registration.slot] = null;
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            if (notify) {
+                for (ServiceListener listener : listeners) {
+                    listener.vehicleRemoved(vehicle);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void fireCommitted() {
+        for (ServiceListener listener : listeners) {
+            listener.mutationCommitted();
+        }
     }
 
     public Optional<Vehicle> findVehicleById(String carId) {
-        return vehicles.stream()
-                .filter(v -> v.getCarId().equals(carId))
-                .findFirst();
+        return findByIdMetrics.time(() -> {
+            Registration registration = vehicleIndex.get(carId);
+            return registration == null ? Optional.empty() : Optional.of(registration.vehicle);
+        });
     }
 
+    /**
+     * The whole fleet copied into a new list; getVehiclePage lists it without copying
+     */
     public List<Vehicle> getAllVehicles() {
-        return new ArrayList<>(vehicles);
+        return getAllMetrics.time(() -> vehicles.findAll());
+    }
+
+    /**
+     * Up to limit vehicles in registration order, after the given cursor (Page.FIRST to start)
+     */
+    public Page<Vehicle> getVehiclePage(long cursor, int limit) {
+        return getPageMetrics.time(() -> vehicles.findPage(cursor, limit));
     }
 
     public List<Vehicle> getAvailableVehicles() {
-        return vehicles.stream()
-                .filter(v -> v.getAvailabilityStatus() == AvailabilityStatus.AVAILABLE)
-                .collect(Collectors.toList());
+        return getAvailableMetrics.time(() -> LockStripes.readOptimistically(indexLock,
+                () -> collectSlots(statusIndex.get(AvailabilityStatus.AVAILABLE))));
     }
 
     public List<Vehicle> getVehiclesByCategory(VehicleCategory category) {
-        return vehicles.stream()
-                .filter(v -> v.getCategory() == category)
-                .collect(Collectors.toList());
+        return getByCategoryMetrics.time(() ->
+                LockStripes.readOptimistically(indexLock, () -> collectSlots(categoryIndex.get(category))));
+    }
+
+    public List<Vehicle> getVehiclesByStatus(AvailabilityStatus status) {
+        return getByStatusMetrics.time(() ->
+                LockStripes.readOptimistically(indexLock, () -> collectSlots(statusIndex.get(status))));
+    }
+
+    /**
+     * Vehicles matching both a status and a category, e.g. available electric cars
+     */
+    public List<Vehicle> getVehiclesByStatusAndCategory(AvailabilityStatus status, VehicleCategory category) {
+        return getByStatusAndCategoryMetrics.time(() -> LockStripes.readOptimistically(indexLock, () -> {
+            // Built in a fresh set: clone() trims the source's words array, which is a write
+            BitSet matches = new BitSet();
+            matches.or(statusIndex.get(status));
+            matches.and(categoryIndex.get(category));
+            return collectSlots(matches);
+        }));
+    }
+
+    public List<Vehicle> getAvailableVehiclesByCategory(VehicleCategory category) {
+        return getVehiclesByStatusAndCategory(AvailabilityStatus.AVAILABLE, category);
+    }
+
+    public int countVehiclesByStatus(AvailabilityStatus status) {
+        return countByStatusMetrics.time(() -> countByStatus(status));
+    }
+
+    private int countByStatus(AvailabilityStatus status) {
+        return LockStripes.readOptimistically(indexLock, () -> statusIndex.get(status).cardinality());
     }
 
     public boolean updateAvailabilityStatus(String carId, AvailabilityStatus status) {
-        Optional<Vehicle> vehicleOpt = findVehicleById(carId);
-        if (vehicleOpt.isPresent()) {
-            vehicleOpt.get().setAvailabilityStatus(status);
+        return updateStatusMetrics.timeOutcome(() -> {
+            Registration registration = vehicleIndex.get(carId);
+            if (registration == null) {
+                return false;
+            }
+            Vehicle vehicle = registration.vehicle;
+            synchronized (vehicle) {
+                if (vehicleIndex.get(carId) != registration) {
+                    return false;
+                }
+                store(registration, vehicle.getModel(), vehicle.getCategory(), status);
+                for (ServiceListener listener : listeners) {
+                    listener.vehicleStatusChanged(vehicle);
+                }
+            }
+            fireCommitted();
             return true;
+        });
+    }
+
+    // Called optimistically: may see a mutation in progress, which the stamp check rejects
+    private List<Vehicle> collectSlots(BitSet matches) {
+        List<Vehicle> result = new ArrayList<>(matches.cardinality());
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            result.add(slots[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * Index entry linking a vehicle to the dense slot used by the secondary indexes
+     */
+    private static final class Registration {
+        private final Vehicle vehicle;
+        private int slot;
+
+        private Registration(Vehicle vehicle) {
+            this.vehicle = vehicle;
         }
-        return false;
     }
 }
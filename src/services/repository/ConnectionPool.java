@@ -0,0 +1,166 @@
+package services.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed-size pool of JDBC connections to an embedded database (e.g. an H2 or
+ * SQLite file), each with its own cache of prepared statements. Connections are
+ * opened on demand up to the pool size and kept open; one that fails is closed
+ * and replaced on the next borrow. Statements are cached per SQL string in LRU
+ * order, so the repositories' fixed set of statements is prepared once per connection.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_SIZE = 8;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    /**
+     * Work done with a borrowed connection
+     */
+    public interface SqlWork<R> {
+        R execute(PooledConnection connection) throws SQLException;
+    }
+
+    private final String url;
+    private final Properties properties;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final BlockingQueue<PooledConnection> idle;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url) {
+        this(url, new Properties(), DEFAULT_SIZE, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public ConnectionPool(String url, Properties properties, int size, int statementCacheSize) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.url = url;
+        this.properties = properties;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(size, true);
+        this.idle = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Runs the work on a pooled connection, waiting for one to be free
+     */
+    public <R> R withConnection(SqlWork<R> work) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed: " + url);
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", e);
+        }
+        PooledConnection connection = null;
+        boolean healthy = false;
+        try {
+            connection = idle.poll();
+            if (connection == null) {
+                connection = new PooledConnection(DriverManager.getConnection(url, properties), statementCacheSize);
+            }
+            R result = work.execute(connection);
+            healthy = true;
+            return result;
+        } finally {
+            if (connection != null) {
+                if (healthy && !closed) {
+                    idle.add(connection);
+                } else {
+                    connection.closeQuietly();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Closes the idle connections; connections in use are closed when returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    /**
+     * A pooled connection with its prepared statement cache
+     */
+    public static final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        private PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * The cached statement for the SQL, prepared on first use. Parameters are
+         * cleared, so callers only bind what they use.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        private void closeQuietly() {
+            for (Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext(); ) {
+                closeQuietly(it.next());
+                it.remove();
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Already unusable
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Already unusable
+            }
+        }
+    }
+}
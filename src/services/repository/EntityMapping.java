@@ -0,0 +1,80 @@
+package services.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maps one kind of entity onto a table for JdbcRepository. Every table has an
+ * id primary key and a seq column giving the listing order; the mapping declares
+ * the remaining columns and binds and reads them in declaration order.
+ */
+public abstract class EntityMapping<T> {
+    private final String table;
+    private final List<String> columnDefinitions;
+    private final List<String> columnNames;
+    // Null for entities listed in insertion order
+    private final ToLongFunction<T> order;
+
+    /**
+     * Mapping of entities listed in insertion order
+     *
+     * @param columnDefinitions column definitions such as "model VARCHAR(128) NOT NULL"
+     */
+    protected EntityMapping(String table, String... columnDefinitions) {
+        this(table, null, columnDefinitions);
+    }
+
+    /**
+     * Mapping of entities listed by their own number, such as the booking number
+     */
+    protected EntityMapping(String table, ToLongFunction<T> order, String... columnDefinitions) {
+        this.table = table;
+        this.order = order;
+        List<String> definitions = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (String definition : columnDefinitions) {
+            definitions.add(definition);
+            names.add(definition.substring(0, definition.indexOf(' ')));
+        }
+        this.columnDefinitions = Collections.unmodifiableList(definitions);
+        this.columnNames = Collections.unmodifiableList(names);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<String> getColumnDefinitions() {
+        return columnDefinitions;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public abstract String idOf(T entity);
+
+    /**
+     * The entities' own listing order, or empty when they are listed in insertion order
+     */
+    public Optional<ToLongFunction<T>> getOrder() {
+        return Optional.ofNullable(order);
+    }
+
+    /**
+     * Binds the mapped columns, starting at the given parameter index
+     */
+    public abstract void bind(PreparedStatement statement, int firstIndex, T entity) throws SQLException;
+
+    /**
+     * Builds the entity with the given ID from the mapped columns of the current
+     * row, starting at the given column index
+     */
+    public abstract T read(String id, ResultSet row, int firstIndex) throws SQLException;
+}
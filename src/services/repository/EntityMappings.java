@@ -0,0 +1,194 @@
+package services.repository;
+
+import models.Booking;
+import models.Customer;
+import models.Invoice;
+import models.Vehicle;
+import enums.AvailabilityStatus;
+import enums.VehicleCategory;
+import pricing.PricingEngine;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Table mappings of the entities for JdbcRepository. Enums are stored by name,
+ * dates as ISO-8601 text and money as cents, which every embedded database
+ * handles the same way. A row that refers to another entity stores what it takes
+ * to resolve it through the given lookup when read. Rows are read while holding a
+ * pooled connection, so lookups answer from the services' in-memory indexes and
+ * never go back to the database, which could otherwise wait on the pool forever.
+ */
+public final class EntityMappings {
+    private EntityMappings() {
+    }
+
+    public static EntityMapping<Vehicle> vehicles() {
+        return new EntityMapping<Vehicle>("vehicles",
+                "model VARCHAR(128) NOT NULL",
+                "category VARCHAR(32) NOT NULL",
+                "status VARCHAR(32) NOT NULL") {
+            @Override
+            public String idOf(Vehicle vehicle) {
+                return vehicle.getCarId();
+            }
+
+            @Override
+            public void bind(PreparedStatement statement, int firstIndex, Vehicle vehicle) throws SQLException {
+                statement.setString(firstIndex, vehicle.getModel());
+                statement.setString(firstIndex + 1, vehicle.getCategory().name());
+                statement.setString(firstIndex + 2, vehicle.getAvailabilityStatus().name());
+            }
+
+            @Override
+            public Vehicle read(String id, ResultSet row, int firstIndex) throws SQLException {
+                Vehicle vehicle = new Vehicle(id, row.getString(firstIndex),
+                        VehicleCategory.valueOf(row.getString(firstIndex + 1)));
+                vehicle.setAvailabilityStatus(AvailabilityStatus.valueOf(row.getString(firstIndex + 2)));
+                return vehicle;
+            }
+        };
+    }
+
+    public static EntityMapping<Customer> customers() {
+        return new EntityMapping<Customer>("customers", Customer::getCustomerNumber,
+                "customer_number BIGINT NOT NULL",
+                "nic_or_passport VARCHAR(64) NOT NULL",
+                "name VARCHAR(256) NOT NULL",
+                "contact_number VARCHAR(64) NOT NULL",
+                "email VARCHAR(256) NOT NULL") {
+            @Override
+            public String idOf(Customer customer) {
+                return customer.getCustomerId();
+            }
+
+            @Override
+            public void bind(PreparedStatement statement, int firstIndex, Customer customer) throws SQLException {
+                statement.setLong(firstIndex, customer.getCustomerNumber());
+                statement.setString(firstIndex + 1, customer.getNicOrPassport());
+                statement.setString(firstIndex + 2, customer.getName());
+                statement.setString(firstIndex + 3, customer.getContactNumber());
+                statement.setString(firstIndex + 4, customer.getEmail());
+            }
+
+            @Override
+            public Customer read(String id, ResultSet row, int firstIndex) throws SQLException {
+                return new Customer(row.getLong(firstIndex), row.getString(firstIndex + 1),
+                        row.getString(firstIndex + 2), row.getString(firstIndex + 3), row.getString(firstIndex + 4));
+            }
+        };
+    }
+
+    /**
+     * Bookings resolve their customer by NIC/passport and their vehicle by carId
+     * through the lookups. The vehicle's model and category are stored too, so a
+     * booking outlives the removal of its vehicle.
+     */
+    public static EntityMapping<Booking> bookings(Function<String, Optional<Customer>> customersByNicOrPassport,
+                                                  Function<String, Optional<Vehicle>> vehicles) {
+        return new EntityMapping<Booking>("bookings", Booking::getBookingNumber,
+                "booking_number BIGINT NOT NULL",
+                "customer_id VARCHAR(64) NOT NULL",
+                "customer_nic_or_passport VARCHAR(64) NOT NULL",
+                "car_id VARCHAR(64) NOT NULL",
+                "vehicle_model VARCHAR(128) NOT NULL",
+                "vehicle_category VARCHAR(32) NOT NULL",
+                "booking_date VARCHAR(10) NOT NULL",
+                "start_date VARCHAR(10) NOT NULL",
+                "end_date VARCHAR(10) NOT NULL",
+                "total_kilometers INT NOT NULL",
+                "deposit_cents BIGINT NOT NULL",
+                "active BOOLEAN NOT NULL") {
+            @Override
+            public String idOf(Booking booking) {
+                return booking.getBookingId();
+            }
+
+            @Override
+            public void bind(PreparedStatement statement, int firstIndex, Booking booking) throws SQLException {
+                Vehicle vehicle = booking.getVehicle();
+                statement.setLong(firstIndex, booking.getBookingNumber());
+                statement.setString(firstIndex + 1, booking.getCustomer().getCustomerId());
+                statement.setString(firstIndex + 2, booking.getCustomer().getNicOrPassport());
+                statement.setString(firstIndex + 3, vehicle.getCarId());
+                statement.setString(firstIndex + 4, vehicle.getModel());
+                statement.setString(firstIndex + 5, vehicle.getCategory().name());
+                statement.setString(firstIndex + 6, booking.getBookingDate().toString());
+                statement.setString(firstIndex + 7, booking.getStartDate().toString());
+                statement.setString(firstIndex + 8, booking.getEndDate().toString());
+                statement.setInt(firstIndex + 9, booking.getTotalKilometers());
+                statement.setLong(firstIndex + 10, PricingEngine.toCents(booking.getDepositAmount()));
+                statement.setBoolean(firstIndex + 11, booking.isActive());
+            }
+
+            @Override
+            public Booking read(String id, ResultSet row, int firstIndex) throws SQLException {
+                long bookingNumber = row.getLong(firstIndex);
+                String customerId = row.getString(firstIndex + 1);
+                Customer customer = customersByNicOrPassport.apply(row.getString(firstIndex + 2))
+                        .filter(found -> found.getCustomerId().equals(customerId))
+                        .orElseThrow(() -> new SQLException(
+                                "Booking " + bookingNumber + " refers to unknown customer " + customerId));
+                String carId = row.getString(firstIndex + 3);
+                Vehicle vehicle = vehicles.apply(carId).orElseGet(() -> detachedVehicle(row, carId, firstIndex));
+
+                Booking booking = new Booking(bookingNumber, customer, vehicle,
+                        LocalDate.parse(row.getString(firstIndex + 7)),
+                        LocalDate.parse(row.getString(firstIndex + 8)), row.getInt(firstIndex + 9));
+                booking.setBookingDate(LocalDate.parse(row.getString(firstIndex + 6)));
+                booking.setDepositAmount(PricingEngine.toAmount(row.getLong(firstIndex + 10)));
+                booking.setActive(row.getBoolean(firstIndex + 11));
+                return booking;
+            }
+        };
+    }
+
+    private static Vehicle detachedVehicle(ResultSet row, String carId, int firstIndex) {
+        try {
+            return new Vehicle(carId, row.getString(firstIndex + 4),
+                    VehicleCategory.valueOf(row.getString(firstIndex + 5)));
+        } catch (SQLException e) {
+            throw new RepositoryException("Failed to read vehicle of booking row", e);
+        }
+    }
+
+    /**
+     * Invoices resolve their booking through the lookup, given the booking's customerId
+     * and bookingId, and are repriced from it when read
+     */
+    public static EntityMapping<Invoice> invoices(BiFunction<String, String, Optional<Booking>> bookings) {
+        return new EntityMapping<Invoice>("invoices", Invoice::getInvoiceNumber,
+                "invoice_number BIGINT NOT NULL",
+                "booking_id VARCHAR(64) NOT NULL",
+                "customer_id VARCHAR(64) NOT NULL",
+                "generated_date VARCHAR(32) NOT NULL") {
+            @Override
+            public String idOf(Invoice invoice) {
+                return invoice.getInvoiceId();
+            }
+
+            @Override
+            public void bind(PreparedStatement statement, int firstIndex, Invoice invoice) throws SQLException {
+                statement.setLong(firstIndex, invoice.getInvoiceNumber());
+                statement.setString(firstIndex + 1, invoice.getBooking().getBookingId());
+                statement.setString(firstIndex + 2, invoice.getBooking().getCustomer().getCustomerId());
+                statement.setString(firstIndex + 3, invoice.getGeneratedDate().toString());
+            }
+
+            @Override
+            public Invoice read(String id, ResultSet row, int firstIndex) throws SQLException {
+                long invoiceNumber = row.getLong(firstIndex);
+                String bookingId = row.getString(firstIndex + 1);
+                Booking booking = bookings.apply(row.getString(firstIndex + 2), bookingId)
+                        .orElseThrow(() -> new SQLException(
+                                "Invoice " + invoiceNumber + " refers to unknown booking " + bookingId));
+                return new Invoice(invoiceNumber, booking, LocalDateTime.parse(row.getString(firstIndex + 3)));
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package services.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Heap-backed repository: a hash index by ID for lookups plus a skip list ordered
+ * by entity number for listings. This is the default storage of every service.
+ */
+public final class InMemoryRepository<T> implements Repository<T> {
+    private final Function<T, String> idOf;
+    // Null when listings follow insertion order
+    private final ToLongFunction<T> orderOf;
+    private final AtomicLong insertions = new AtomicLong();
+    private final Map<String, Entry<T>> byId = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, T> inOrder = new ConcurrentSkipListMap<>();
+
+    private static final class Entry<T> {
+        private final long order;
+        private final T entity;
+
+        private Entry(long order, T entity) {
+            this.order = order;
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * A repository listing entities in insertion order
+     */
+    public InMemoryRepository(Function<T, String> idOf) {
+        this(idOf, null);
+    }
+
+    public InMemoryRepository(Function<T, String> idOf, ToLongFunction<T> orderOf) {
+        this.idOf = idOf;
+        this.orderOf = orderOf;
+    }
+
+    @Override
+    public void save(T entity) {
+        byId.compute(idOf.apply(entity), (id, existing) -> {
+            if (existing != null && existing.entity == entity) {
+                return existing;
+            }
+            if (existing != null) {
+                inOrder.remove(existing.order, existing.entity);
+            }
+            long order = orderOf != null ? orderOf.applyAsLong(entity)
+                    : existing != null ? existing.order : insertions.incrementAndGet();
+            inOrder.put(order, entity);
+            return new Entry<>(order, entity);
+        });
+    }
+
+    @Override
+    public void saveAll(Collection<? extends T> entities) {
+        for (T entity : entities) {
+            save(entity);
+        }
+    }
+
+    @Override
+    public boolean delete(String id) {
+        Entry<T> removed = byId.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        inOrder.remove(removed.order, removed.entity);
+        return true;
+    }
+
+    @Override
+    public Optional<T> findById(String id) {
+        Entry<T> entry = byId.get(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.entity);
+    }
+
+    @Override
+    public List<T> findAll() {
+        return new ArrayList<>(inOrder.values());
+    }
+
+    @Override
+    public Page<T> findPage(long cursor, int limit) {
+        List<T> items = new ArrayList<>(Math.min(limit, 64));
+        long last = cursor;
+        Iterator<Map.Entry<Long, T>> entries = inOrder.tailMap(cursor, false).entrySet().iterator();
+        while (items.size() < limit && entries.hasNext()) {
+            Map.Entry<Long, T> entry = entries.next();
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page<>(items, last, entries.hasNext());
+    }
+
+    @Override
+    public long count() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,339 @@
+package services.repository;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Repository backed by a table in an embedded database, reached through a
+ * ConnectionPool. Saves update the row and insert it when there is none; saveAll
+ * sends the updates and then the missing inserts as JDBC batches in a single
+ * transaction. An insert that loses to a concurrent save of the same new entity
+ * fails on the primary key and is retried as an update, so saves behave as an
+ * upsert on any embedded database without relying on its MERGE dialect. Entities read back are kept in a weak identity map, so the same
+ * instance is returned for as long as anything references it while the rest
+ * can be garbage collected and re-read from the table when needed.
+ */
+public final class JdbcRepository<T> implements Repository<T> {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    // Save attempts when inserts keep losing to concurrent saves or deletes
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
+    private final ConnectionPool pool;
+    private final EntityMapping<T> mapping;
+    // Null for mappings listed in insertion order
+    private final ToLongFunction<T> order;
+    private final int batchSize;
+    // Next seq for mappings listed in insertion order
+    private final AtomicLong insertions = new AtomicLong();
+    private final Map<String, LiveEntity<T>> live = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+    private final String insertSql;
+    private final String updateSql;
+    private final String deleteSql;
+    private final String selectByIdSql;
+    private final String selectAllSql;
+    private final String selectPageSql;
+    private final String countSql;
+
+    private static final class LiveEntity<T> extends WeakReference<T> {
+        private final String id;
+
+        private LiveEntity(String id, T entity, ReferenceQueue<T> queue) {
+            super(entity, queue);
+            this.id = id;
+        }
+    }
+
+    public JdbcRepository(ConnectionPool pool, EntityMapping<T> mapping) {
+        this(pool, mapping, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates the table if it does not exist yet
+     */
+    public JdbcRepository(ConnectionPool pool, EntityMapping<T> mapping, int batchSize) {
+        this.pool = pool;
+        this.mapping = mapping;
+        this.order = mapping.getOrder().orElse(null);
+        this.batchSize = batchSize;
+
+        String table = mapping.getTable();
+        List<String> columns = mapping.getColumnNames();
+        String setters = String.join(" = ?, ", columns) + " = ?";
+        String placeholders = "?, ?" + ", ?".repeat(columns.size());
+        String selected = "SELECT id, " + String.join(", ", columns) + " FROM " + table;
+        this.insertSql = "INSERT INTO " + table + " (id, seq, " + String.join(", ", columns)
+                + ") VALUES (" + placeholders + ")";
+        // Rows listed in insertion order keep their seq when updated
+        this.updateSql = order != null
+                ? "UPDATE " + table + " SET seq = ?, " + setters + " WHERE id = ?"
+                : "UPDATE " + table + " SET " + setters + " WHERE id = ?";
+        this.deleteSql = "DELETE FROM " + table + " WHERE id = ?";
+        this.selectByIdSql = selected + " WHERE id = ?";
+        this.selectAllSql = selected + " ORDER BY seq";
+        this.selectPageSql = "SELECT id, seq, " + String.join(", ", columns) + " FROM " + table
+                + " WHERE seq > ? ORDER BY seq";
+        this.countSql = "SELECT COUNT(*) FROM " + table;
+
+        run(connection -> {
+            try (Statement statement = connection.getConnection().createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + table + " (id VARCHAR(64) PRIMARY KEY, "
+                        + "seq BIGINT NOT NULL, " + String.join(", ", mapping.getColumnDefinitions()) + ")");
+                statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_seq ON " + table + " (seq)");
+                try (ResultSet max = statement.executeQuery("SELECT MAX(seq) FROM " + table)) {
+                    if (max.next()) {
+                        insertions.set(max.getLong(1));
+                    }
+                }
+            }
+            return null;
+        }, "create table");
+    }
+
+    @Override
+    public void save(T entity) {
+        String id = mapping.idOf(entity);
+        run(connection -> {
+            for (int attempt = 1; ; attempt++) {
+                PreparedStatement update = connection.prepare(updateSql);
+                bindUpdate(update, id, entity);
+                if (update.executeUpdate() > 0) {
+                    return null;
+                }
+                PreparedStatement insert = connection.prepare(insertSql);
+                bindInsert(insert, id, entity);
+                try {
+                    insert.executeUpdate();
+                    return null;
+                } catch (SQLException e) {
+                    if (!isDuplicateKey(e) || attempt == MAX_SAVE_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        }, "save " + id);
+        remember(id, entity);
+    }
+
+    @Override
+    public void saveAll(Collection<? extends T> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        List<T> pending = new ArrayList<>(entities);
+        run(connection -> {
+            boolean autoCommit = connection.getConnection().getAutoCommit();
+            connection.getConnection().setAutoCommit(false);
+            try {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        for (int from = 0; from < pending.size(); from += batchSize) {
+                            saveBatch(connection, pending.subList(from, Math.min(pending.size(), from + batchSize)));
+                        }
+                        connection.getConnection().commit();
+                        return null;
+                    } catch (SQLException | RuntimeException e) {
+                        connection.getConnection().rollback();
+                        // Rows inserted concurrently are updated on the next attempt
+                        if (!(e instanceof SQLException && isDuplicateKey((SQLException) e))
+                                || attempt == MAX_SAVE_ATTEMPTS) {
+                            throw e;
+                        }
+                    }
+                }
+            } finally {
+                connection.getConnection().setAutoCommit(autoCommit);
+            }
+        }, "save " + pending.size() + " rows");
+        for (T entity : pending) {
+            remember(mapping.idOf(entity), entity);
+        }
+    }
+
+    private void saveBatch(ConnectionPool.PooledConnection connection, List<T> batch) throws SQLException {
+        PreparedStatement update = connection.prepare(updateSql);
+        for (T entity : batch) {
+            bindUpdate(update, mapping.idOf(entity), entity);
+            update.addBatch();
+        }
+        int[] updated = update.executeBatch();
+
+        PreparedStatement insert = connection.prepare(insertSql);
+        boolean inserting = false;
+        for (int i = 0; i < batch.size(); i++) {
+            T entity = batch.get(i);
+            String id = mapping.idOf(entity);
+            // Drivers that do not report counts for batches are asked row by row
+            boolean missing = updated[i] == Statement.SUCCESS_NO_INFO ? !exists(connection, id) : updated[i] == 0;
+            if (missing) {
+                bindInsert(insert, id, entity);
+                insert.addBatch();
+                inserting = true;
+            }
+        }
+        if (inserting) {
+            insert.executeBatch();
+        }
+    }
+
+    private boolean exists(ConnectionPool.PooledConnection connection, String id) throws SQLException {
+        PreparedStatement select = connection.prepare(selectByIdSql);
+        select.setString(1, id);
+        try (ResultSet row = select.executeQuery()) {
+            return row.next();
+        }
+    }
+
+    // Batch failures wrap the driver's exception for the failing row
+    private static boolean isDuplicateKey(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            if (cause instanceof SQLIntegrityConstraintViolationException || "23505".equals(cause.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bindInsert(PreparedStatement insert, String id, T entity) throws SQLException {
+        insert.setString(1, id);
+        insert.setLong(2, order != null ? order.applyAsLong(entity) : insertions.incrementAndGet());
+        mapping.bind(insert, 3, entity);
+    }
+
+    private void bindUpdate(PreparedStatement update, String id, T entity) throws SQLException {
+        int index = 1;
+        if (order != null) {
+            update.setLong(index++, order.applyAsLong(entity));
+        }
+        mapping.bind(update, index, entity);
+        update.setString(index + mapping.getColumnNames().size(), id);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        boolean deleted = run(connection -> {
+            PreparedStatement delete = connection.prepare(deleteSql);
+            delete.setString(1, id);
+            return delete.executeUpdate() > 0;
+        }, "delete " + id);
+        live.remove(id);
+        return deleted;
+    }
+
+    @Override
+    public Optional<T> findById(String id) {
+        T known = cached(id);
+        if (known != null) {
+            return Optional.of(known);
+        }
+        T loaded = run(connection -> {
+            PreparedStatement select = connection.prepare(selectByIdSql);
+            select.setString(1, id);
+            try (ResultSet row = select.executeQuery()) {
+                return row.next() ? mapping.read(id, row, 2) : null;
+            }
+        }, "find " + id);
+        return Optional.ofNullable(loaded == null ? null : resolve(id, loaded));
+    }
+
+    @Override
+    public List<T> findAll() {
+        return run(connection -> {
+            List<T> result = new ArrayList<>();
+            try (ResultSet row = connection.prepare(selectAllSql).executeQuery()) {
+                while (row.next()) {
+                    // Live entities are returned as they are, without decoding their row
+                    String id = row.getString(1);
+                    T known = cached(id);
+                    result.add(known != null ? known : resolve(id, mapping.read(id, row, 2)));
+                }
+            }
+            return result;
+        }, "list " + mapping.getTable());
+    }
+
+    @Override
+    public Page<T> findPage(long cursor, int limit) {
+        return run(connection -> {
+            PreparedStatement select = connection.prepare(selectPageSql);
+            select.setLong(1, cursor);
+            // One row past the page tells whether another page follows; 0 means no limit
+            select.setMaxRows(limit == Integer.MAX_VALUE ? 0 : limit + 1);
+            List<T> items = new ArrayList<>(Math.min(limit, 64));
+            long last = cursor;
+            boolean hasMore = false;
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    if (items.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    String id = row.getString(1);
+                    last = row.getLong(2);
+                    T known = cached(id);
+                    items.add(known != null ? known : resolve(id, mapping.read(id, row, 3)));
+                }
+            }
+            return new Page<>(items, last, hasMore);
+        }, "page " + mapping.getTable());
+    }
+
+    @Override
+    public long count() {
+        return run(connection -> {
+            try (ResultSet row = connection.prepare(countSql).executeQuery()) {
+                row.next();
+                return row.getLong(1);
+            }
+        }, "count " + mapping.getTable());
+    }
+
+    private T cached(String id) {
+        LiveEntity<T> reference = live.get(id);
+        return reference == null ? null : reference.get();
+    }
+
+    // A saved entity becomes the live instance for its ID
+    private void remember(String id, T entity) {
+        expungeCollected();
+        live.put(id, new LiveEntity<>(id, entity, collected));
+    }
+
+    // A row read back only becomes the live instance if no other is still referenced
+    private T resolve(String id, T read) {
+        expungeCollected();
+        LiveEntity<T> current = live.compute(id, (key, existing) ->
+                existing != null && existing.get() != null ? existing : new LiveEntity<>(key, read, collected));
+        T alive = current.get();
+        return alive == null ? read : alive;
+    }
+
+    private void expungeCollected() {
+        LiveEntity<?> reference;
+        while ((reference = (LiveEntity<?>) collected.poll()) != null) {
+            live.remove(reference.id, reference);
+        }
+    }
+
+    private <R> R run(ConnectionPool.SqlWork<R> work, String action) {
+        try {
+            return pool.withConnection(work);
+        } catch (SQLException e) {
+            throw new RepositoryException("Failed to " + action + " in " + mapping.getTable(), e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package services.repository;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * One page of a listing, in the repository's listing order.
+ * Pages are addressed by keyset cursors rather than offsets: a cursor is the
+ * listing key of the last entity already seen, so fetching the next page costs
+ * a seek plus the page itself however deep into the listing it is. Entities
+ * saved or deleted between pages never make an unchanged entity repeat or be
+ * skipped, and nothing is copied beyond the page being read.
+ */
+public final class Page<T> {
+    // Cursor of the first page
+    public static final long FIRST = Long.MIN_VALUE;
+
+    /**
+     * Fetches up to limit entities listed after the cursor
+     */
+    public interface Source<T> {
+        Page<T> fetch(long cursor, int limit);
+    }
+
+    private final List<T> items;
+    private final long nextCursor;
+    private final boolean hasMore;
+
+    public Page(List<T> items, long nextCursor, boolean hasMore) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Cursor to fetch the page after this one with
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * The whole listing, fetched a page at a time as it is iterated. Obtaining it
+     * reads nothing, and at most one page is held at once.
+     */
+    public static <T> Iterable<T> all(Source<T> source, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        return () -> new Iterator<T>() {
+            private Page<T> page = source.fetch(FIRST, pageSize);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == page.items.size() && page.hasMore) {
+                    page = source.fetch(page.nextCursor, pageSize);
+                    next = 0;
+                }
+                return next < page.items.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.items.get(next++);
+            }
+        };
+    }
+}
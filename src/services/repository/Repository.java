@@ -0,0 +1,49 @@
+package services.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage of record for one kind of entity, keyed by the entity's ID.
+ * Services keep their secondary indexes in memory and go through a repository
+ * for primary lookups, listings and every change, so the storage behind them
+ * can be swapped without touching service logic. Listings are ordered by the
+ * entity's number (e.g. booking number), or by insertion for entities without one.
+ * Implementations are thread-safe and return the same instance for an entity
+ * for as long as it is referenced, since services mutate entities in place.
+ * Storage failures surface as RepositoryException.
+ */
+public interface Repository<T> extends AutoCloseable {
+
+    /**
+     * Inserts the entity or overwrites the stored state of an existing one
+     */
+    void save(T entity);
+
+    /**
+     * Saves a batch of entities, in one round of writes where the storage supports it
+     */
+    void saveAll(Collection<? extends T> entities);
+
+    boolean delete(String id);
+
+    Optional<T> findById(String id);
+
+    /**
+     * Every entity, copied into a new list
+     */
+    List<T> findAll();
+
+    /**
+     * Up to limit entities listed after the given cursor (Page.FIRST for the first
+     * page), without reading or copying the rest of the listing
+     */
+    Page<T> findPage(long cursor, int limit);
+
+    long count();
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,12 @@
+package services.repository;
+
+/**
+ * Unchecked wrapper for failures of the storage behind a repository
+ */
+public class RepositoryException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RepositoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,109 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free allocator for sequential entity IDs such as B0001, C0001 and INV0001.
+ * IDs are handed out as primitive longs from an atomic counter and only turned
+ * into their display form when needed. Numbers are zero padded to at least four
+ * digits and simply grow wider past 9999, so B9999 is followed by B10000.
+ */
+public final class IdAllocator {
+    public static final int MIN_DIGITS = 4;
+
+    private final String prefix;
+    private final AtomicLong nextNumber;
+
+    public IdAllocator(String prefix) {
+        this.prefix = prefix;
+        this.nextNumber = new AtomicLong(1);
+    }
+
+    public long next() {
+        return nextNumber.getAndIncrement();
+    }
+
+    /**
+     * Reserves a contiguous block of numbers and returns the first one
+     */
+    public long nextBlock(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Block size must not be negative: " + size);
+        }
+        return nextNumber.getAndAdd(size);
+    }
+
+    /**
+     * Ensures numbers already in use (e.g. restored from storage) are never handed out again
+     */
+    public void advancePast(long usedNumber) {
+        nextNumber.accumulateAndGet(usedNumber + 1, Math::max);
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String format(long number) {
+        return render(prefix, number);
+    }
+
+    public long parse(String id) {
+        return parse(prefix, id);
+    }
+
+    public static String render(String prefix, long number) {
+        if (number < 0) {
+            throw new IllegalArgumentException("ID number must not be negative: " + number);
+        }
+        int digits = 1;
+        for (long n = number; n >= 10; n /= 10) {
+            digits++;
+        }
+        int prefixLength = prefix.length();
+        char[] buffer = new char[prefixLength + Math.max(MIN_DIGITS, digits)];
+        prefix.getChars(0, prefixLength, buffer, 0);
+
+        int pos = buffer.length;
+        long remaining = number;
+        do {
+            buffer[--pos] = (char) ('0' + (int) (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        while (pos > prefixLength) {
+            buffer[--pos] = '0';
+        }
+        return new String(buffer);
+    }
+
+    /**
+     * Returns the number encoded in an ID with the given prefix, rejecting IDs not in
+     * that form, since entities are keyed and ordered by their number
+     */
+    public static long parseRequired(String prefix, String id) {
+        long number = parse(prefix, id);
+        if (number < 0) {
+            throw new IllegalArgumentException("ID must be " + prefix + " followed by digits: " + id);
+        }
+        return number;
+    }
+
+    /**
+     * Returns the number encoded in an ID with the given prefix, or -1 if the ID is not in that form
+     */
+    public static long parse(String prefix, String id) {
+        if (id == null || !id.startsWith(prefix) || id.length() == prefix.length()
+                || id.length() - prefix.length() > 18) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = prefix.length(); i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+}
@@ -0,0 +1,133 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Size-bounded least-recently-used cache.
+ * Capacity is expressed as a total weight (e.g. approximate bytes) computed per
+ * value, and the least recently read entries are evicted once it is exceeded.
+ * Hit, miss and eviction counts are kept for monitoring.
+ */
+public final class LruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    // Access ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    // Bumped on every invalidation so a value loaded before it is not cached afterwards
+    private long invalidations;
+
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, loading and caching it on a miss.
+     * The loader runs without holding the cache lock.
+     */
+    public V getOrLoad(K key, Function<K, V> loader) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            V cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            synchronized (this) {
+                if (invalidations == invalidationsBeforeLoad) {
+                    put(key, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            // Never worth evicting everything else for a single oversized value
+            invalidate(key);
+            return;
+        }
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            totalWeight -= weigher.applyAsLong(previous);
+        }
+        totalWeight += weight;
+        evictToFit();
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        V removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= weigher.applyAsLong(removed);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private void evictToFit() {
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && eldest.hasNext()) {
+            totalWeight -= weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Entries: %d | Weight: %d/%d | Hits: %d | Misses: %d | Evictions: %d",
+                entries.size(), totalWeight, maxWeight, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,109 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive substring index over a text attribute of items, e.g. customer names.
+ * Every three-character window (trigram) of an item's text maps to the items that
+ * contain it. A query of three or more characters reads the smallest posting set
+ * among its trigrams and confirms each candidate with a case-insensitive region
+ * match, so searches allocate no lowercased copies of either the query or the text.
+ * Trigrams are packed into a long (three 16-bit chars) rather than a String.
+ */
+public final class NGramIndex<T> {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, Set<T>> postings = new ConcurrentHashMap<>();
+    // Text each item was indexed under, needed to remove its trigrams on reindex
+    private final Map<T, String> indexedText = new ConcurrentHashMap<>();
+
+    public synchronized void add(T item, String text) {
+        String previous = indexedText.put(item, text);
+        if (previous != null) {
+            removeGrams(item, previous);
+        }
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            postings.computeIfAbsent(gramAt(text, i), gram -> ConcurrentHashMap.newKeySet()).add(item);
+        }
+    }
+
+    public synchronized void remove(T item) {
+        String previous = indexedText.remove(item);
+        if (previous != null) {
+            removeGrams(item, previous);
+        }
+    }
+
+    private void removeGrams(T item, String text) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            long gram = gramAt(text, i);
+            Set<T> items = postings.get(gram);
+            if (items != null) {
+                items.remove(item);
+                if (items.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Items whose indexed text contains the query, ignoring case
+     */
+    public List<T> search(String query) {
+        if (query.length() < GRAM_LENGTH) {
+            // Too short to have a trigram: fall back to checking every indexed item
+            return matching(indexedText.keySet(), query);
+        }
+        Set<T> smallest = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            Set<T> items = postings.get(gramAt(query, i));
+            if (items == null) {
+                return Collections.emptyList();
+            }
+            if (smallest == null || items.size() < smallest.size()) {
+                smallest = items;
+            }
+        }
+        return matching(smallest, query);
+    }
+
+    private List<T> matching(Set<T> candidates, String query) {
+        List<T> result = new ArrayList<>();
+        for (T candidate : candidates) {
+            String text = indexedText.get(candidate);
+            if (text != null && containsIgnoreCase(text, query)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    public static boolean containsIgnoreCase(String text, String query) {
+        int last = text.length() - query.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long gramAt(String text, int offset) {
+        long gram = 0;
+        for (int i = offset; i < offset + GRAM_LENGTH; i++) {
+            gram = (gram << 16) | fold(text.charAt(i));
+        }
+        return gram;
+    }
+
+    // Same folding String.regionMatches(true, ...) applies, so index and verification agree
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}